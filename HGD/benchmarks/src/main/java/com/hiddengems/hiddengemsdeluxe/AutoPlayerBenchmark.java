@@ -0,0 +1,100 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Bot moves per second in a running game, with and without the transposition table. The time budget is
+// out of reach, so every move searches the full depth and the score is the cost of that search.
+// The table's probes and hits per move are reported as secondary results.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AutoPlayerBenchmark {
+
+    @Param({"0", "17"})
+    public int tableBits;
+
+    @Param({"2", "3"})
+    public int depth;
+
+    private AutoPlayer autoPlayer;
+    private GameEngine engine;
+    private long seed = 0;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class TableCounters {
+        public long probes;
+        public long hits;
+    }
+
+    @Setup
+    public void setUp() {
+        autoPlayer = new AutoPlayer(depth, AutoPlayer.NO_BUDGET, ForkJoinPool.commonPool(), 42, tableBits);
+        newGame();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        if (autoPlayer.getTable() != null) {
+            autoPlayer.getTable().resetStats();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void collectCounters(TableCounters counters) {
+        if (autoPlayer.getTable() != null) {
+            counters.probes += autoPlayer.getTable().probes();
+            counters.hits += autoPlayer.getTable().hits();
+        }
+    }
+
+    private void newGame() {
+        engine = new GameEngine(seed++, new BitBoard(GameEngine.NUM_ROWS, GameEngine.NUM_COLS));
+        engine.tick(); // Spawn the first stone
+    }
+
+    // Choose a move, then play it out: rotate, slide, drop, clear the cascade and spawn the next stone
+    @Benchmark
+    public AutoPlayer.Move move() {
+        AutoPlayer.Move move = autoPlayer.chooseMove(engine);
+        if (move == null) {
+            newGame();
+            return null;
+        }
+        for (int i = 0; i < move.rotations(); i++) {
+            engine.step(GameEngine.Input.ROTATE);
+        }
+        GameEngine.Input slide = move.column() < engine.getFallingStone().col ? GameEngine.Input.LEFT : GameEngine.Input.RIGHT;
+        for (int i = 0; i < GameEngine.NUM_COLS && engine.getFallingStone().col != move.column(); i++) {
+            engine.step(slide);
+        }
+        while (engine.getFallingStone() != null) {
+            engine.step(GameEngine.Input.DOWN);
+        }
+        if (engine.isGameOver()) {
+            newGame();
+        } else {
+            engine.tick();
+        }
+        return move;
+    }
+}
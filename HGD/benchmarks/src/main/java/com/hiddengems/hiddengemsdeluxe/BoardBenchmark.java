@@ -0,0 +1,105 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Matching, gravity and cascades on seeded boards. Every operation works on a fresh copy of a
+// prepared board, so copyBaseline is the part of each score that is not the operation itself.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"char", "bit"})
+    public String backend;
+
+    @Param({"20x8", "64x64"})
+    public String size;
+
+    @Param({"0.3", "0.6", "0.9"})
+    public double density;
+
+    private GemBoard settled;  // No matches and nothing dirty
+    private GemBoard landed;   // A stone just landed on top of a settled board
+    private GemBoard allDirty; // Every gem still waiting to be matched
+    private GemBoard holes;    // Gems floating above empty cells
+
+    @Setup
+    public void setUp() {
+        String[] dims = size.split("x");
+        int rows = Integer.parseInt(dims[0]);
+        int cols = Integer.parseInt(dims[1]);
+        Random random = new Random(42);
+
+        settled = Boards.create(backend, rows, cols);
+        Boards.fill(settled, density, random);
+
+        landed = settled.copy();
+        Boards.land(landed, random);
+
+        allDirty = Boards.create(backend, rows, cols);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                allDirty.set(row, col, settled.get(row, col));
+            }
+        }
+
+        holes = settled.copy();
+        Boards.punchHoles(holes, 0.2, random);
+    }
+
+    @Benchmark
+    public GemBoard copyBaseline() {
+        return landed.copy();
+    }
+
+    // checkAndClearMatches after a landing: only the new stone's cells are dirty
+    @Benchmark
+    public boolean markMatchesAfterLanding() {
+        return landed.copy().markMatches();
+    }
+
+    @Benchmark
+    public boolean markMatchesWholeBoard() {
+        return allDirty.copy().markMatches();
+    }
+
+    // makeStonesFall
+    @Benchmark
+    public GemBoard collapse() {
+        GemBoard board = holes.copy();
+        board.collapse();
+        return board;
+    }
+
+    // Mark, clear and collapse until nothing matches, as the engine does link by link
+    @Benchmark
+    public GemBoard cascade() {
+        GemBoard board = landed.copy();
+        while (board.markMatches()) {
+            board.clearMarked();
+            board.collapse();
+        }
+        return board;
+    }
+
+    @Benchmark
+    public boolean hasFullColumn() {
+        return settled.hasFullColumn(settled.rows() - 3);
+    }
+}
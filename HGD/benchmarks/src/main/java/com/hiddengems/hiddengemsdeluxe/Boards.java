@@ -0,0 +1,87 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Random;
+
+// Seeded board setups shared by the benchmarks.
+final class Boards {
+
+    private static final char[] COLORS = {'R', 'G', 'B', 'Y', 'P'};
+
+    private Boards() {
+    }
+
+    static GemBoard create(String backend, int rows, int cols) {
+        switch (backend) {
+            case "char":
+                return new CharBoard(rows, cols);
+            case "bit":
+                return new BitBoard(rows, cols);
+            default:
+                throw new IllegalArgumentException("Unknown board backend: " + backend);
+        }
+    }
+
+    // Stack gems from the bottom of every column up to about density * rows without leaving any match,
+    // then run one matching pass so that no cell is left dirty.
+    static void fill(GemBoard board, double density, Random random) {
+        board.clear();
+        for (int col = 0; col < board.cols(); col++) {
+            int height = (int) Math.round(board.rows() * density) + random.nextInt(3) - 1;
+            height = Math.max(0, Math.min(board.rows() - 3, height)); // Leave room for a falling stone
+            for (int row = board.rows() - 1; row >= board.rows() - height; row--) {
+                board.set(row, col, colorWithoutMatch(board, row, col, random));
+            }
+        }
+        board.markMatches();
+    }
+
+    // Gems are placed column by column, bottom up, so every run of three is complete once its
+    // last cell is set; its other two cells lie below or to the left.
+    private static char colorWithoutMatch(GemBoard board, int row, int col, Random random) {
+        int start = random.nextInt(COLORS.length);
+        for (int i = 0; i < COLORS.length; i++) {
+            char color = COLORS[(start + i) % COLORS.length];
+            if (!completesRun(board, row, col, color, 1, 0)
+                    && !completesRun(board, row, col, color, 0, -1)
+                    && !completesRun(board, row, col, color, 1, -1)
+                    && !completesRun(board, row, col, color, -1, -1)) {
+                return color;
+            }
+        }
+        return COLORS[start];
+    }
+
+    private static boolean completesRun(GemBoard board, int row, int col, char color, int rowStep, int colStep) {
+        for (int i = 1; i <= 2; i++) {
+            int r = row + i * rowStep;
+            int c = col + i * colStep;
+            if (r < 0 || r >= board.rows() || c < 0 || c >= board.cols() || board.get(r, c) != color) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Drop a random stone onto the lowest free cells of a random column, as a landing would.
+    static void land(GemBoard board, Random random) {
+        int col = random.nextInt(board.cols());
+        int top = 0;
+        while (top < board.rows() && board.isEmpty(top, col)) {
+            top++;
+        }
+        for (int i = 1; i <= 3 && top - i >= 0; i++) {
+            board.set(top - i, col, COLORS[random.nextInt(COLORS.length)]);
+        }
+    }
+
+    // Punch random holes into the stacks so that collapse() has work to do.
+    static void punchHoles(GemBoard board, double share, Random random) {
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                if (!board.isEmpty(row, col) && random.nextDouble() < share) {
+                    board.set(row, col, ' ');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// How the striped CharBoard passes scale with board size and cores. threads = 0 runs every pass on the
+// benchmark thread; otherwise the board uses a fork-join pool of that many workers. Boards are copied
+// before every invocation, outside the measurement, since a copy of a 2000x2000 board is itself costly.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class LargeBoardBenchmark {
+
+    private static final char[] COLORS = {'R', 'G', 'B', 'Y', 'P'};
+
+    @Param({"200x200", "1000x1000", "2000x2000"})
+    public String size;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private GemBoard random;  // Random gems everywhere, matches included, every cell dirty
+    private GemBoard holes;   // Gems floating above empty cells
+
+    @Setup
+    public void setUp() {
+        String[] dims = size.split("x");
+        int rows = Integer.parseInt(dims[0]);
+        int cols = Integer.parseInt(dims[1]);
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+        Random rng = new Random(42);
+
+        random = new CharBoard(rows, cols, pool);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                random.set(row, col, COLORS[rng.nextInt(COLORS.length)]);
+            }
+        }
+        holes = new CharBoard(rows, cols, pool);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (rng.nextDouble() < 0.7) {
+                    holes.set(row, col, COLORS[rng.nextInt(COLORS.length)]);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RandomCopy {
+        GemBoard board;
+
+        @Setup(Level.Invocation)
+        public void copy(LargeBoardBenchmark benchmark) {
+            board = benchmark.random.copy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class HolesCopy {
+        GemBoard board;
+
+        @Setup(Level.Invocation)
+        public void copy(LargeBoardBenchmark benchmark) {
+            board = benchmark.holes.copy();
+        }
+    }
+
+    // checkAndClearMatches over a board where every cell changed
+    @Benchmark
+    public boolean markMatches(RandomCopy copy) {
+        return copy.board.markMatches();
+    }
+
+    // makeStonesFall
+    @Benchmark
+    public GemBoard collapse(HolesCopy copy) {
+        copy.board.collapse();
+        return copy.board;
+    }
+
+    // The whole chain, link by link, until nothing matches
+    @Benchmark
+    public int cascade(RandomCopy copy) {
+        GemBoard board = copy.board;
+        int links = 0;
+        while (board.markMatches()) {
+            board.clearMarked();
+            board.collapse();
+            links++;
+        }
+        return links;
+    }
+
+    @Benchmark
+    public boolean hasFullColumn(RandomCopy copy) {
+        return copy.board.hasFullColumn(copy.board.rows() - 3);
+    }
+}
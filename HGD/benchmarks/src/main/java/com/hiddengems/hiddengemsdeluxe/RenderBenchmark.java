@@ -0,0 +1,134 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Renderer cost on the headless Monocle glass platform with the software pipeline. Canvas calls only
+// record commands, so renderFull, renderPieceMove and repaintCell measure the FX thread's share of a
+// frame; renderFullRasterized adds a snapshot, which makes Prism actually paint the board layer.
+// Each invocation hops to the FX thread once and runs a batch, to keep the hand-off out of the score.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dglass.platform=Monocle", "-Dmonocle.platform=Headless", "-Dprism.order=sw"})
+public class RenderBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int BATCH = 50;
+
+    @Param({"0.3", "0.9"})
+    public double density;
+
+    private GameEngine engine;
+    private GameRenderer renderer;
+    private Canvas offscreen;
+    private int nextCell;
+    private boolean moveLeft;
+
+    @Setup
+    public void setUp() throws Exception {
+        Platform.startup(() -> {
+        });
+        onFxThread(() -> {
+            engine = new GameEngine(42);
+            Boards.fill(engine.getBoard(), density, new Random(42));
+            engine.tick(); // Spawn the first stone
+            renderer = new GameRenderer(engine);
+            renderer.resize(WIDTH, HEIGHT);
+            renderer.render();
+            offscreen = new Canvas(WIDTH, HEIGHT);
+            return null;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        Platform.exit();
+    }
+
+    // drawGameBoard as it used to run: every layer repainted
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object renderFull() throws Exception {
+        return onFxThread(() -> {
+            for (int i = 0; i < BATCH; i++) {
+                renderer.resize(WIDTH, HEIGHT); // Invalidates every layer; the sprites are kept
+                renderer.render();
+            }
+            return renderer;
+        });
+    }
+
+    // A typical frame: the falling stone moved one column
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object renderPieceMove() throws Exception {
+        return onFxThread(() -> {
+            for (int i = 0; i < BATCH; i++) {
+                engine.step(moveLeft ? GameEngine.Input.LEFT : GameEngine.Input.RIGHT);
+                moveLeft = !moveLeft;
+                renderer.render();
+            }
+            return renderer;
+        });
+    }
+
+    // drawCell into an offscreen canvas
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object repaintCell() throws Exception {
+        return onFxThread(() -> {
+            GraphicsContext gc = offscreen.getGraphicsContext2D();
+            gc.clearRect(0, 0, WIDTH, HEIGHT); // Covers the canvas, so the command buffer starts over
+            for (int i = 0; i < BATCH; i++) {
+                renderer.repaintCell(gc, nextCell / GameEngine.NUM_COLS, nextCell % GameEngine.NUM_COLS);
+                nextCell = (nextCell + 1) % (GameEngine.NUM_ROWS * GameEngine.NUM_COLS);
+            }
+            return gc;
+        });
+    }
+
+    @Benchmark
+    public WritableImage renderFullRasterized() throws Exception {
+        return onFxThread(() -> {
+            renderer.resize(WIDTH, HEIGHT);
+            renderer.render();
+            return ((Canvas) renderer.layers().get(3)).snapshot(null, null); // The board layer
+        });
+    }
+
+    private static <T> T onFxThread(Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result.get();
+    }
+}
@@ -0,0 +1,79 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Collision checks and moves of the falling stone against a seeded board.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripleStoneBenchmark {
+
+    @Param({"char", "bit"})
+    public String backend;
+
+    @Param({"20x8", "64x64"})
+    public String size;
+
+    @Param({"0.3", "0.9"})
+    public double density;
+
+    private GemBoard board;
+    private TripleStone stone;
+
+    @Setup
+    public void setUp() {
+        String[] dims = size.split("x");
+        board = Boards.create(backend, Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        Boards.fill(board, density, new Random(42));
+
+        // Hover just above the stack in the middle column, where the neighbours are occupied
+        int col = board.cols() / 2;
+        int top = 0;
+        while (top < board.rows() && board.isEmpty(top, col)) {
+            top++;
+        }
+        stone = new TripleStone(Math.max(0, top - 3), col, new char[]{'R', 'G', 'B'});
+    }
+
+    @Benchmark
+    public boolean canMoveDown() {
+        return stone.canMoveDown(board);
+    }
+
+    // A left and a right move, so the stone ends where it started
+    @Benchmark
+    public int moveLeftRight() {
+        stone.moveLeft(board);
+        stone.moveRight(board);
+        return stone.col;
+    }
+
+    @Benchmark
+    public int moveRightLeft() {
+        stone.moveRight(board);
+        stone.moveLeft(board);
+        return stone.col;
+    }
+
+    @Benchmark
+    public char shiftUp() {
+        stone.shiftUp();
+        return stone.colors[0];
+    }
+}
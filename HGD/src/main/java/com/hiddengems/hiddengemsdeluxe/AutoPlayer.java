@@ -0,0 +1,414 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Bot that picks where the falling stone goes. Every column and shiftUp rotation of the falling stone,
+// then of the next stone, then of a few sampled stones beyond that, is landed on a BitBoard copy and
+// its cascade resolved; the leaves are scored by a height/bumpiness/pairs heuristic. The top levels of
+// the tree run as fork-join tasks. Search deepens one level at a time until maxDepth or the time budget
+// is reached, and the move from the deepest finished level wins. Cascade outcomes and evaluations are
+// cached by Zobrist hash in a transposition table, since every deepening pass and the next move's search
+// land the same stones on the same boards again.
+public class AutoPlayer implements Policy {
+
+    public static final int DEFAULT_MAX_DEPTH = 3;
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+    public static final long NO_BUDGET = Long.MAX_VALUE / 2_000_000L; // Always search to maxDepth
+    public static final int DEFAULT_TABLE_BITS = 17; // 2^17 transposition table entries, 3 MB
+
+    private static final int STONE_LENGTH = GameEngine.STONE_LENGTH;
+    private static final int SAMPLED_STONES = 4; // Random stones tried at each level past the known two
+    private static final int FORK_LEVELS = 2; // Levels whose branches are split into separate tasks
+    private static final double LOSS = -1e9;
+
+    // The table holds two kinds of entries, both fixed by the board alone: the cascade outcome of a
+    // landed board and the heuristic value of a settled one
+    private static final long OUTCOME_KEY = Zobrist.mix(-1);
+    private static final long EVALUATION_KEY = Zobrist.mix(-2);
+
+    // Heuristic weights
+    private static final double LINK_REWARD = 10; // The engine scores one point per cascade link
+    private static final double CLEARED_REWARD = 1;
+    private static final double HEIGHT_PENALTY = 0.5;
+    private static final double BUMPINESS_PENALTY = 0.3;
+    private static final double DANGER_PENALTY = 2; // Squared, for columns above DANGER_HEIGHT
+    private static final int DANGER_HEIGHT = 10;
+    private static final double PAIR_REWARD = 0.5;
+
+    // Where to put the falling stone: the target column and how many times to shiftUp it first
+    public record Move(int column, int rotations) {
+    }
+
+    private final int maxDepth;
+    private final long budgetNanos;
+    private final ForkJoinPool pool;
+    private final Random random;
+    private final TranspositionTable table; // null when disabled
+
+    public AutoPlayer() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_BUDGET_MILLIS, ForkJoinPool.commonPool(), 0);
+    }
+
+    public AutoPlayer(int maxDepth, long budgetMillis, ForkJoinPool pool, long seed) {
+        this(maxDepth, budgetMillis, pool, seed, DEFAULT_TABLE_BITS);
+    }
+
+    // tableBits = 0 searches without a transposition table
+    public AutoPlayer(int maxDepth, long budgetMillis, ForkJoinPool pool, long seed, int tableBits) {
+        this.maxDepth = maxDepth;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.pool = pool;
+        this.random = new Random(seed);
+        this.table = tableBits > 0 ? new TranspositionTable(tableBits) : null;
+    }
+
+    TranspositionTable getTable() {
+        return table;
+    }
+
+    // Search on the calling thread's view of the engine and block until a move is chosen.
+    // Returns null if no stone is falling.
+    @Override
+    public Move chooseMove(GameEngine engine) {
+        Search search = snapshot(engine);
+        return search == null ? null : pool.invoke(ForkJoinTask.adapt(search::run));
+    }
+
+    // Copy the engine state now and search in the pool, so the game can keep running meanwhile.
+    @Override
+    public CompletableFuture<Move> planAsync(GameEngine engine) {
+        Search search = snapshot(engine);
+        if (search == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(search::run, pool);
+    }
+
+    // Runs on the caller's thread: take what the search needs as values, the engine goes on meanwhile
+    private Search snapshot(GameEngine engine) {
+        Piece stone = engine.getFallingPiece();
+        if (stone == null || engine.isGameOver()) {
+            return null;
+        }
+
+        char[][] stones = new char[Math.max(maxDepth, 2)][];
+        stones[0] = stone.colors();
+        stones[1] = engine.getNextPiece().colors();
+        String palette = engine.getRules().palette(); // Sampled stones come from the colors the engine deals
+        synchronized (random) {
+            for (int level = 2; level < stones.length; level++) {
+                stones[level] = new char[SAMPLED_STONES * STONE_LENGTH];
+                for (int i = 0; i < stones[level].length; i++) {
+                    stones[level][i] = palette.charAt(random.nextInt(palette.length()));
+                }
+            }
+        }
+        return new Search(engine.snapshotBoard(), stones, stone.row(), stone.col());
+    }
+
+    // One move decision: the root position and the stones that may be placed on it
+    private final class Search {
+
+        private final BoardSnapshot position;
+        private BitBoard root; // Built from the position on the search's own thread
+        private final char[][] stones; // Known stones at levels 0 and 1; SAMPLED_STONES stones back to back after that
+        private final int stoneRow;
+        private final int stoneCol;
+        private final AtomicBoolean timedOut = new AtomicBoolean();
+        private long deadline;
+        private int depth;
+
+        private Search(BoardSnapshot position, char[][] stones, int stoneRow, int stoneCol) {
+            this.position = position;
+            this.stones = stones;
+            this.stoneRow = stoneRow;
+            this.stoneCol = stoneCol;
+        }
+
+        Move run() {
+            deadline = System.nanoTime() + budgetNanos;
+            root = new BitBoard(position.rows(), position.cols());
+            position.copyTo(root);
+            if (table != null) {
+                table.newGeneration();
+            }
+            Move best = null;
+            for (depth = 1; depth <= maxDepth; depth++) {
+                Move move = bestRootMove();
+                if (timedOut.get() && best != null) {
+                    break; // Keep the move of the last level that finished in time
+                }
+                best = move;
+                if (timedOut.get()) {
+                    break;
+                }
+            }
+            return best;
+        }
+
+        private Move bestRootMove() {
+            List<Placement> placements = new ArrayList<>();
+            for (int rotations : distinctRotations(stones[0], 0)) {
+                for (int col = 0; col < root.cols(); col++) {
+                    if (reachable(root, stoneRow, stoneCol, col)) {
+                        placements.add(new Placement(root, stones[0], 0, rotations, col, 0));
+                    }
+                }
+            }
+            if (placements.isEmpty()) {
+                return new Move(stoneCol, 0); // Boxed in; let it fall where it is
+            }
+            ForkJoinTask.invokeAll(placements);
+
+            Placement best = placements.get(0);
+            for (Placement placement : placements) {
+                if (placement.join() > best.join()) {
+                    best = placement;
+                }
+            }
+            return new Move(best.col, best.rotations);
+        }
+
+        // Best value over all placements of the stone at this level, or the heuristic once deep enough
+        private double search(GemBoard board, int level) {
+            if (level >= depth) {
+                return evaluateCached(board);
+            }
+            if (System.nanoTime() > deadline) {
+                timedOut.set(true);
+                return evaluateCached(board);
+            }
+            if (level < 2) {
+                return bestPlacement(board, stones[level], 0, level);
+            }
+            double total = 0;
+            for (int sample = 0; sample < SAMPLED_STONES; sample++) {
+                total += bestPlacement(board, stones[level], sample * STONE_LENGTH, level);
+            }
+            return total / SAMPLED_STONES;
+        }
+
+        private double bestPlacement(GemBoard board, char[] colors, int offset, int level) {
+            int spawnCol = board.cols() / 2; // Where the engine spawns new stones
+            if (level < FORK_LEVELS) {
+                List<Placement> placements = new ArrayList<>();
+                for (int rotations : distinctRotations(colors, offset)) {
+                    for (int col = 0; col < board.cols(); col++) {
+                        if (reachable(board, 0, spawnCol, col)) {
+                            placements.add(new Placement(board, colors, offset, rotations, col, level));
+                        }
+                    }
+                }
+                ForkJoinTask.invokeAll(placements);
+                double best = LOSS;
+                for (Placement placement : placements) {
+                    best = Math.max(best, placement.join());
+                }
+                return best;
+            }
+
+            double best = LOSS;
+            for (int rotations : distinctRotations(colors, offset)) {
+                for (int col = 0; col < board.cols(); col++) {
+                    if (reachable(board, 0, spawnCol, col)) {
+                        best = Math.max(best, place(board, colors, offset, rotations, col, level));
+                    }
+                }
+            }
+            return best;
+        }
+
+        // Land the stone on a copy, resolve the cascade and search on from there. The landed board's hash
+        // is known before copying, so a cached outcome can skip the cascade, and at the leaves the copy too.
+        private double place(GemBoard board, char[] colors, int offset, int rotations, int col, int level) {
+            int top = board.top(col);
+            if (top < STONE_LENGTH) {
+                return LOSS;
+            }
+            long landed = board.hash();
+            for (int i = 0; i < STONE_LENGTH; i++) {
+                landed ^= Zobrist.key((top - STONE_LENGTH + i) * board.cols() + col, colors[offset + (i + rotations) % STONE_LENGTH]);
+            }
+
+            double outcome = probe(landed ^ OUTCOME_KEY);
+            if (outcome == LOSS) {
+                return LOSS;
+            }
+            if (outcome == 0 && level + 1 >= depth) {
+                double evaluation = probe(landed ^ EVALUATION_KEY); // Nothing matched, so the landed board is the leaf
+                if (!Double.isNaN(evaluation)) {
+                    return evaluation;
+                }
+            }
+
+            GemBoard child = board.copy();
+            for (int i = 0; i < STONE_LENGTH; i++) {
+                child.set(top - STONE_LENGTH + i, col, colors[offset + (i + rotations) % STONE_LENGTH]);
+            }
+            if (outcome != 0) { // Unknown, or the cascade has to be replayed to get the board it leaves
+                boolean known = !Double.isNaN(outcome);
+                outcome = resolveCascade(child);
+                if (table != null && !known) {
+                    table.store(landed ^ OUTCOME_KEY, outcome, 0);
+                }
+                if (outcome == LOSS) {
+                    return LOSS;
+                }
+            }
+            return outcome + search(child, level + 1);
+        }
+
+        // Reward for the links and stones the cascade clears, or LOSS if it ends the game
+        private double resolveCascade(GemBoard board) {
+            int links = 0;
+            int cleared = 0;
+            while (true) {
+                boolean matched = board.markMatches();
+                if (board.hasFullColumn(GameEngine.fullColumnStones(board.rows()))) {
+                    return LOSS;
+                }
+                if (!matched) {
+                    break;
+                }
+                links++;
+                cleared += countMarked(board);
+                board.clearMarked();
+                board.collapse();
+            }
+            return links * LINK_REWARD + cleared * CLEARED_REWARD;
+        }
+
+        private double evaluateCached(GemBoard board) {
+            double evaluation = probe(board.hash() ^ EVALUATION_KEY);
+            if (Double.isNaN(evaluation)) {
+                evaluation = evaluate(board);
+                if (table != null) {
+                    table.store(board.hash() ^ EVALUATION_KEY, evaluation, 0);
+                }
+            }
+            return evaluation;
+        }
+
+        private double probe(long key) {
+            return table == null ? Double.NaN : table.probe(key, 0);
+        }
+
+        @SuppressWarnings("serial") // ForkJoinTask is Serializable, but a search task is never serialized
+        private final class Placement extends RecursiveTask<Double> {
+
+            private final GemBoard board;
+            private final char[] colors;
+            private final int offset;
+            private final int rotations;
+            private final int col;
+            private final int level;
+
+            private Placement(GemBoard board, char[] colors, int offset, int rotations, int col, int level) {
+                this.board = board;
+                this.colors = colors;
+                this.offset = offset;
+                this.rotations = rotations;
+                this.col = col;
+                this.level = level;
+            }
+
+            @Override
+            protected Double compute() {
+                return place(board, colors, offset, rotations, col, level);
+            }
+        }
+    }
+
+    // Rotation counts that give different colour orders, e.g. only 0 for a stone of one colour
+    private static List<Integer> distinctRotations(char[] colors, int offset) {
+        List<Integer> rotations = new ArrayList<>(STONE_LENGTH);
+        for (int r = 0; r < STONE_LENGTH; r++) {
+            boolean seen = false;
+            for (int earlier : rotations) {
+                boolean same = true;
+                for (int i = 0; i < STONE_LENGTH; i++) {
+                    if (colors[offset + (i + r) % STONE_LENGTH] != colors[offset + (i + earlier) % STONE_LENGTH]) {
+                        same = false;
+                        break;
+                    }
+                }
+                seen |= same;
+            }
+            if (!seen) {
+                rotations.add(r);
+            }
+        }
+        return rotations;
+    }
+
+    // The stone can only slide sideways through columns that are free where it hangs.
+    private static boolean reachable(GemBoard board, int row, int fromCol, int toCol) {
+        int step = toCol > fromCol ? 1 : -1;
+        for (int col = fromCol; col != toCol; col += step) {
+            for (int i = 0; i < STONE_LENGTH; i++) {
+                if (row + i >= board.rows() || !board.isEmpty(row + i, col + step)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int countMarked(GemBoard board) {
+        int marked = 0;
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                if (board.get(row, col) == 'M') {
+                    marked++;
+                }
+            }
+        }
+        return marked;
+    }
+
+    // Lower and flatter stacks are better; same-coloured neighbours are matches waiting to happen.
+    private static double evaluate(GemBoard board) {
+        double score = 0;
+        int previousHeight = -1;
+        for (int col = 0; col < board.cols(); col++) {
+            int top = board.top(col);
+            int height = board.rows() - top;
+            score -= height * HEIGHT_PENALTY;
+            if (height > DANGER_HEIGHT) {
+                score -= (height - DANGER_HEIGHT) * (height - DANGER_HEIGHT) * DANGER_PENALTY;
+            }
+            if (previousHeight >= 0) {
+                score -= Math.abs(height - previousHeight) * BUMPINESS_PENALTY;
+            }
+            previousHeight = height;
+
+            for (int row = top; row < board.rows(); row++) {
+                char gem = board.get(row, col);
+                if (sameGem(board, row, col + 1, gem)) {
+                    score += PAIR_REWARD;
+                }
+                if (sameGem(board, row + 1, col, gem)) {
+                    score += PAIR_REWARD;
+                }
+                if (sameGem(board, row + 1, col + 1, gem)) {
+                    score += PAIR_REWARD;
+                }
+                if (sameGem(board, row + 1, col - 1, gem)) {
+                    score += PAIR_REWARD;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static boolean sameGem(GemBoard board, int row, int col, char gem) {
+        return row >= 0 && row < board.rows() && col >= 0 && col < board.cols() && board.get(row, col) == gem;
+    }
+}
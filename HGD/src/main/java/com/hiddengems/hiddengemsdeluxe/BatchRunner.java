@@ -0,0 +1,206 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Command-line balancing runs: N seeded games under one set of GameRules, played headless by a policy
+// on every core. Each worker of a fork-join pool takes the next game number, plays it to game over
+// (or the tick limit) and hands the statistics over a bounded queue to the main thread, which streams
+// them out as CSV, so memory use doesn't grow with the number of games. Game i uses seed + i, so any
+// row can be played again on its own. With --state-streams every game's state stream (see StateStream)
+// is written to DIR/game-N.hgds and the summary adds what they came to per tick.
+//
+//   java -cp target/classes com.hiddengems.hiddengemsdeluxe.BatchRunner --games 1000000 --policy random
+//        --threshold 20 --max-speed-ups 5 --decrement 100 --palette RGBYP --out results.csv
+public final class BatchRunner {
+
+    private static final String HEADER = "game,seed,score,level,cascades,longest_cascade,stones,ticks,game_over";
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long DEFAULT_MAX_TICKS = 1_000_000; // 10 000 s of game time
+
+    private record Result(long game, long seed, int score, int level, int cascades, int longestCascade,
+                          int stones, long ticks, boolean gameOver, long streamBytes) {
+    }
+
+    private long games = 1000;
+    private long seed = 1;
+    private String policy = "random";
+    private int depth = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long maxTicks = DEFAULT_MAX_TICKS;
+    private GameRules rules = GameRules.DEFAULT;
+    private int rows = GameEngine.NUM_ROWS;
+    private int cols = GameEngine.NUM_COLS;
+    private Path out; // null for stdout
+    private Path stateStreams; // Directory for the games' state streams, null for none
+
+    private BatchRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchRunner [--games N] [--seed S] [--policy random|bot] [--depth D] [--threads T]"
+                    + " [--max-ticks T] [--threshold N] [--max-speed-ups N] [--decrement MS] [--palette RGBYP]"
+                    + " [--rows R] [--cols C] [--out FILE] [--state-streams DIR]");
+            System.exit(2);
+        }
+        runner.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--games" -> games = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--policy" -> policy = value;
+                case "--depth" -> depth = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--max-ticks" -> maxTicks = Long.parseLong(value);
+                case "--threshold" -> rules = rules.withScoreIncreaseThreshold(Integer.parseInt(value));
+                case "--max-speed-ups" -> rules = rules.withMaxSpeedUpCount(Integer.parseInt(value));
+                case "--decrement" -> rules = rules.withFallDurationDecrementMillis(Long.parseLong(value));
+                case "--palette" -> rules = rules.withPalette(value);
+                case "--rows" -> rows = Integer.parseInt(value);
+                case "--cols" -> cols = Integer.parseInt(value);
+                case "--out" -> out = Path.of(value);
+                case "--state-streams" -> stateStreams = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        if (rows < 2 * GameEngine.STONE_LENGTH || cols < 1) {
+            throw new IllegalArgumentException("Board too small: " + rows + "x" + cols);
+        }
+        if (!policy.equals("random") && !policy.equals("bot")) {
+            throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        if (stateStreams != null) {
+            Files.createDirectories(stateStreams);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicLong nextGame = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    for (long game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+                        results.put(play(game, pool));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        long startNanos = System.nanoTime();
+        long totalScore = 0;
+        long gamesOver = 0;
+        int bestScore = 0;
+        long totalTicks = 0;
+        long streamBytes = 0;
+        try (Writer writer = out == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(out)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            StringBuilder line = new StringBuilder();
+            for (long written = 0; written < games; ) {
+                Result result = results.poll(100, TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    if (failure.get() != null) {
+                        throw new IllegalStateException("Game failed", failure.get());
+                    }
+                    continue;
+                }
+                line.setLength(0);
+                line.append(result.game()).append(',')
+                        .append(result.seed()).append(',')
+                        .append(result.score()).append(',')
+                        .append(result.level()).append(',')
+                        .append(result.cascades()).append(',')
+                        .append(result.longestCascade()).append(',')
+                        .append(result.stones()).append(',')
+                        .append(result.ticks()).append(',')
+                        .append(result.gameOver()).append('\n');
+                writer.append(line);
+                written++;
+                totalScore += result.score();
+                bestScore = Math.max(bestScore, result.score());
+                totalTicks += result.ticks();
+                streamBytes += result.streamBytes();
+                if (result.gameOver()) {
+                    gamesOver++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.err.printf("%d games in %.1f s (%.0f games/s on %d threads): mean score %.2f, best %d, %d ended in game over%n",
+                games, seconds, games / seconds, threads, (double) totalScore / games, bestScore, gamesOver);
+        if (stateStreams != null) {
+            System.err.printf("State streams: %d bytes, %.2f bytes per tick, %.0f per game%n",
+                    streamBytes, (double) streamBytes / Math.max(1, totalTicks), (double) streamBytes / games);
+        }
+    }
+
+    private Result play(long game, ForkJoinPool pool) {
+        long gameSeed = seed + game;
+        GameEngine engine = new GameEngine(gameSeed, rows, cols, rules);
+        GameSimulation simulation = new GameSimulation(engine);
+        Policy player = policy.equals("bot")
+                ? new AutoPlayer(depth, AutoPlayer.NO_BUDGET, pool, gameSeed, 0) // A table per game costs more than it saves
+                : new RandomPolicy(gameSeed);
+        simulation.setPolicy(player, true);
+        StateStreamWriter stream = stateStreams == null ? null : openStream(game, engine);
+        simulation.setStateWriter(stream);
+        while (!engine.isGameOver() && simulation.getTick() < maxTicks) {
+            simulation.update();
+        }
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Result(game, gameSeed, engine.getScore(), engine.getLevel(), engine.getCascades(),
+                engine.getLongestCascade(), engine.getStonesLanded(), simulation.getTick(), engine.isGameOver(),
+                stream == null ? 0 : stream.getBytesWritten());
+    }
+
+    private StateStreamWriter openStream(long game, GameEngine engine) {
+        try {
+            return StateStreamWriter.open(FileChannel.open(stateStreams.resolve("game-" + game + ".hgds"),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), engine);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Arrays;
+
+// Bitboard backend: one bit plane per gem colour plus a plane for marked ('M') stones.
+// Cell (row, col) is bit row * cols + col, so the default 20x8 board fits in three longs per plane.
+// Matches are found by AND-ing each plane with copies of itself shifted one step along the direction,
+// gravity compacts each column with Long.compress/expand (falling back to shifting every stone
+// with a hole below it down one row per pass on boards taller than 64 rows).
+// Only the band of rows that received gems since the last pass is scanned for new matches.
+// The Zobrist hash follows every change bit by bit: set, marking, clearing and each moved stone.
+public class BitBoard implements GemBoard {
+
+    private static final char[] GEMS = {'R', 'G', 'B', 'Y', 'P'};
+
+    private final int rows;
+    private final int cols;
+    private final int size;
+    private final int words;
+    private final long lastWordMask;
+
+    // Cells where a run of three can start without wrapping into the next row
+    private final long[] rightRunStart; // col <= cols - 3
+    private final long[] leftRunStart;  // col >= 2
+
+    // columnMasks[col][w] selects the bits of column col inside word w, used by the gravity fast path
+    private final long[][] columnMasks;
+
+    private final long[][] planes;
+    private final long[] marked;
+    private final ColumnTops tops;
+    private long hash;
+
+    // Rows that received gems since the last match pass, empty when dirtyToRow < dirtyFromRow
+    private int dirtyFromRow;
+    private int dirtyToRow = -1;
+
+    // Scratch planes reused by every pass
+    private final long[] scratchA;
+    private final long[] scratchB;
+    private final long[] scratchC;
+    private final long[] scratchMatch;
+
+    public BitBoard(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.size = rows * cols;
+        this.words = (size + 63) >>> 6;
+        this.lastWordMask = (size & 63) == 0 ? -1L : (1L << (size & 63)) - 1;
+        this.rightRunStart = new long[words];
+        this.leftRunStart = new long[words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int index = row * cols + col;
+                if (col <= cols - 3) {
+                    rightRunStart[index >>> 6] |= 1L << index;
+                }
+                if (col >= 2) {
+                    leftRunStart[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+        this.columnMasks = new long[cols][words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int index = row * cols + col;
+                columnMasks[col][index >>> 6] |= 1L << index;
+            }
+        }
+        this.planes = new long[GEMS.length][words];
+        this.marked = new long[words];
+        this.tops = new ColumnTops(rows, cols);
+        this.scratchA = new long[words];
+        this.scratchB = new long[words];
+        this.scratchC = new long[words];
+        this.scratchMatch = new long[words];
+    }
+
+    private BitBoard(BitBoard other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.size = other.size;
+        this.words = other.words;
+        this.lastWordMask = other.lastWordMask;
+        this.rightRunStart = other.rightRunStart;
+        this.leftRunStart = other.leftRunStart;
+        this.columnMasks = other.columnMasks;
+        this.planes = new long[GEMS.length][];
+        for (int gem = 0; gem < GEMS.length; gem++) {
+            planes[gem] = other.planes[gem].clone();
+        }
+        this.marked = other.marked.clone();
+        this.tops = new ColumnTops(rows, cols);
+        this.tops.copyFrom(other.tops);
+        this.hash = other.hash;
+        this.dirtyFromRow = other.dirtyFromRow;
+        this.dirtyToRow = other.dirtyToRow;
+        this.scratchA = new long[words];
+        this.scratchB = new long[words];
+        this.scratchC = new long[words];
+        this.scratchMatch = new long[words];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public char get(int row, int col) {
+        int index = row * cols + col;
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if ((marked[word] & bit) != 0) {
+            return 'M';
+        }
+        for (int gem = 0; gem < GEMS.length; gem++) {
+            if ((planes[gem][word] & bit) != 0) {
+                return GEMS[gem];
+            }
+        }
+        return ' ';
+    }
+
+    @Override
+    public void set(int row, int col, char gem) {
+        int index = row * cols + col;
+        int word = index >>> 6;
+        long bit = 1L << index;
+        hash ^= Zobrist.key(index, get(row, col)) ^ Zobrist.key(index, gem);
+        for (long[] plane : planes) {
+            plane[word] &= ~bit;
+        }
+        marked[word] &= ~bit;
+        if (gem == 'M') {
+            marked[word] |= bit;
+        } else {
+            int plane = gemIndex(gem);
+            if (plane >= 0) {
+                planes[plane][word] |= bit;
+                markRowsDirty(row, row);
+            }
+        }
+        if (gem == ' ') {
+            tops.emptied(row, col, this);
+        } else {
+            tops.filled(row, col);
+        }
+    }
+
+    @Override
+    public int top(int col) {
+        return tops.get(col);
+    }
+
+    @Override
+    public boolean isEmpty(int row, int col) {
+        int index = row * cols + col;
+        int word = index >>> 6;
+        long occupied = marked[word];
+        for (long[] plane : planes) {
+            occupied |= plane[word];
+        }
+        return (occupied & (1L << index)) == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0L);
+        }
+        Arrays.fill(marked, 0L);
+        tops.reset();
+        dirtyToRow = -1;
+        hash = 0;
+    }
+
+    private void markRowsDirty(int fromRow, int toRow) {
+        if (dirtyToRow < dirtyFromRow) {
+            dirtyFromRow = fromRow;
+            dirtyToRow = toRow;
+        } else {
+            dirtyFromRow = Math.min(dirtyFromRow, fromRow);
+            dirtyToRow = Math.max(dirtyToRow, toRow);
+        }
+    }
+
+    @Override
+    public boolean markMatches() {
+        if (dirtyToRow < dirtyFromRow) {
+            return false;
+        }
+        // A new run has to touch a dirty row, so it starts at most two rows above the band
+        // and ends at most two rows below it.
+        int startFrom = Math.max(0, dirtyFromRow - 2) * cols;
+        int startTo = (dirtyToRow + 1) * cols;
+        int endTo = Math.min(rows, dirtyToRow + 3) * cols;
+        int fromWord = startFrom >>> 6;
+        int toWord = (endTo - 1) >>> 6;
+        dirtyToRow = -1;
+
+        boolean matchesFound = false;
+        for (int gem = 0; gem < planes.length; gem++) {
+            long[] plane = planes[gem];
+            Arrays.fill(scratchMatch, fromWord, toWord + 1, 0L);
+            boolean found = collectRuns(plane, 1, rightRunStart, startFrom, startTo, fromWord, toWord); // horizontal
+            found |= collectRuns(plane, cols, null, startFrom, startTo, fromWord, toWord);               // vertical
+            found |= collectRuns(plane, cols + 1, rightRunStart, startFrom, startTo, fromWord, toWord);  // diagonal, top left to bottom right
+            found |= collectRuns(plane, cols - 1, leftRunStart, startFrom, startTo, fromWord, toWord);   // diagonal, top right to bottom left
+            if (found) {
+                for (int w = fromWord; w <= toWord; w++) {
+                    long matched = scratchMatch[w];
+                    hash ^= Zobrist.keys(matched, w << 6, gem) ^ Zobrist.keys(matched, w << 6, Zobrist.MARKED);
+                    marked[w] |= matched;
+                    plane[w] &= ~matched;
+                }
+                matchesFound = true;
+            }
+        }
+        return matchesFound;
+    }
+
+    // ORs every run of three set bits spaced by step that starts at a cell in [startFrom, startTo)
+    // into scratchMatch. Only words fromWord..toWord are read back.
+    private boolean collectRuns(long[] plane, int step, long[] startMask, int startFrom, int startTo, int fromWord, int toWord) {
+        shiftTowardStart(plane, step, scratchA, fromWord, toWord);
+        shiftTowardStart(plane, 2 * step, scratchB, fromWord, toWord);
+        long any = 0;
+        for (int w = fromWord; w <= toWord; w++) {
+            long start = plane[w] & scratchA[w] & scratchB[w] & rangeMask(w, startFrom, startTo);
+            if (startMask != null) {
+                start &= startMask[w];
+            }
+            scratchC[w] = start;
+            any |= start;
+        }
+        if (any == 0) {
+            return false;
+        }
+        for (int w = fromWord; w <= toWord; w++) {
+            scratchMatch[w] |= scratchC[w];
+        }
+        shiftTowardEnd(scratchC, step, scratchA, fromWord, toWord);
+        shiftTowardEnd(scratchC, 2 * step, scratchB, fromWord, toWord);
+        for (int w = fromWord; w <= toWord; w++) {
+            scratchMatch[w] |= scratchA[w] | scratchB[w];
+        }
+        return true;
+    }
+
+    // Bits of word w whose cell index lies in [from, to)
+    private static long rangeMask(int w, int from, int to) {
+        int base = w << 6;
+        long mask = -1L;
+        if (from > base) {
+            mask = from - base >= 64 ? 0L : mask & (-1L << (from - base));
+        }
+        if (to < base + 64) {
+            mask = to <= base ? 0L : mask & (-1L >>> (64 - (to - base)));
+        }
+        return mask;
+    }
+
+    @Override
+    public boolean hasMarked() {
+        for (int w = 0; w < words; w++) {
+            if (marked[w] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clearMarked() {
+        for (int w = 0; w < words; w++) {
+            hash ^= Zobrist.keys(marked[w], w << 6, Zobrist.MARKED);
+        }
+        Arrays.fill(marked, 0L);
+        for (int col = 0; col < cols; col++) {
+            tops.refresh(col, this);
+        }
+    }
+
+    @Override
+    public void collapse() {
+        if (rows <= Long.SIZE) {
+            compactColumns();
+        } else {
+            dropUntilSettled();
+        }
+    }
+
+    // Each column fits in one long: squeeze every plane's column bits through the occupancy mask
+    // so the stones keep their order and end up against the bottom row.
+    private void compactColumns() {
+        for (int col = 0; col < cols; col++) {
+            long occupied = 0;
+            for (long[] plane : planes) {
+                occupied |= gatherColumn(plane, col);
+            }
+            occupied |= gatherColumn(marked, col);
+            int stones = Long.bitCount(occupied);
+            tops.settled(col, stones);
+            if (stones == 0 || occupied == bottomRows(stones)) {
+                continue; // Nothing to move in this column
+            }
+            // Everything between the top stone and the lowest hole may have changed
+            long holes = ~occupied & bottomRows(rows);
+            markRowsDirty(Long.numberOfTrailingZeros(occupied), Long.SIZE - 1 - Long.numberOfLeadingZeros(holes));
+            for (int gem = 0; gem < planes.length; gem++) {
+                compactColumn(planes[gem], gem, col, occupied, stones);
+            }
+            compactColumn(marked, Zobrist.MARKED, col, occupied, stones);
+        }
+    }
+
+    private void compactColumn(long[] plane, int gem, int col, long occupied, int stones) {
+        long before = gatherColumn(plane, col);
+        long after = Long.compress(before, occupied) << (rows - stones);
+        for (long moved = before ^ after; moved != 0; moved &= moved - 1) {
+            hash ^= Zobrist.key(Long.numberOfTrailingZeros(moved) * cols + col, gem);
+        }
+        scatterColumn(plane, col, after);
+    }
+
+    private long bottomRows(int stones) {
+        return (stones == Long.SIZE ? -1L : (1L << stones) - 1) << (rows - stones);
+    }
+
+    // Bit r of the result is cell (r, col)
+    private long gatherColumn(long[] plane, int col) {
+        long[] masks = columnMasks[col];
+        long column = 0;
+        int shift = 0;
+        for (int w = 0; w < words; w++) {
+            long mask = masks[w];
+            if (mask != 0) {
+                column |= Long.compress(plane[w], mask) << shift;
+                shift += Long.bitCount(mask);
+            }
+        }
+        return column;
+    }
+
+    private void scatterColumn(long[] plane, int col, long column) {
+        long[] masks = columnMasks[col];
+        for (int w = 0; w < words; w++) {
+            long mask = masks[w];
+            if (mask != 0) {
+                plane[w] = (plane[w] & ~mask) | Long.expand(column, mask);
+                column >>>= Long.bitCount(mask);
+            }
+        }
+    }
+
+    private void dropUntilSettled() {
+        markRowsDirty(0, rows - 1);
+        long[] occupied = scratchMatch;
+        while (true) {
+            // Empty cells of the board
+            for (int w = 0; w < words; w++) {
+                long bits = marked[w];
+                for (long[] plane : planes) {
+                    bits |= plane[w];
+                }
+                occupied[w] = bits;
+                scratchC[w] = ~bits;
+            }
+            scratchC[words - 1] &= lastWordMask;
+
+            // scratchA = cells that have at least one empty cell somewhere below them
+            shiftTowardStart(scratchC, cols, scratchA);
+            for (int span = 1; span < rows; span <<= 1) {
+                shiftTowardStart(scratchA, span * cols, scratchB);
+                for (int w = 0; w < words; w++) {
+                    scratchA[w] |= scratchB[w];
+                }
+            }
+
+            long any = 0;
+            for (int w = 0; w < words; w++) {
+                scratchA[w] &= occupied[w];
+                any |= scratchA[w];
+            }
+            if (any == 0) {
+                for (int col = 0; col < cols; col++) {
+                    tops.refresh(col, this);
+                }
+                return;
+            }
+
+            // Every such stone drops by one row
+            for (int gem = 0; gem < planes.length; gem++) {
+                dropOneRow(planes[gem], gem, scratchA);
+            }
+            dropOneRow(marked, Zobrist.MARKED, scratchA);
+        }
+    }
+
+    private void dropOneRow(long[] plane, int gem, long[] movers) {
+        for (int w = 0; w < words; w++) {
+            scratchC[w] = plane[w] & movers[w];
+        }
+        shiftTowardEnd(scratchC, cols, scratchB);
+        for (int w = 0; w < words; w++) {
+            hash ^= Zobrist.keys(scratchC[w], w << 6, gem) ^ Zobrist.keys(scratchB[w], w << 6, gem);
+            plane[w] = (plane[w] & ~movers[w]) | scratchB[w];
+        }
+    }
+
+    @Override
+    public boolean hasFullColumn(int stones) {
+        if (tops.tallest() < stones) {
+            return false; // No column is even that high
+        }
+        long[] run = scratchA;
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            for (long[] plane : planes) {
+                bits |= plane[w];
+            }
+            run[w] = bits;
+        }
+        // run[i] = cells i, i + cols, ..., i + (length - 1) * cols are all gems
+        int length = 1;
+        while (length * 2 <= stones) {
+            shiftTowardStart(run, length * cols, scratchB);
+            for (int w = 0; w < words; w++) {
+                run[w] &= scratchB[w];
+            }
+            length *= 2;
+        }
+        if (length < stones) {
+            shiftTowardStart(run, (stones - length) * cols, scratchB);
+            for (int w = 0; w < words; w++) {
+                run[w] &= scratchB[w];
+            }
+        }
+        for (int w = 0; w < words; w++) {
+            if (run[w] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public BitBoard copy() {
+        return new BitBoard(this);
+    }
+
+    // dst bit i = src bit i + distance
+    private void shiftTowardStart(long[] src, int distance, long[] dst) {
+        shiftTowardStart(src, distance, dst, 0, words - 1);
+    }
+
+    private void shiftTowardStart(long[] src, int distance, long[] dst, int fromWord, int toWord) {
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        for (int w = fromWord; w <= toWord; w++) {
+            int from = w + wordShift;
+            long low = from < words ? src[from] : 0L;
+            long high = from + 1 < words ? src[from + 1] : 0L;
+            dst[w] = bitShift == 0 ? low : (low >>> bitShift) | (high << (64 - bitShift));
+        }
+    }
+
+    // dst bit i = src bit i - distance, bits past the last cell are dropped
+    private void shiftTowardEnd(long[] src, int distance, long[] dst) {
+        shiftTowardEnd(src, distance, dst, 0, words - 1);
+    }
+
+    // Source words below fromWord are taken as zero
+    private void shiftTowardEnd(long[] src, int distance, long[] dst, int fromWord, int toWord) {
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        for (int w = toWord; w >= fromWord; w--) {
+            int from = w - wordShift;
+            long high = from >= fromWord ? src[from] : 0L;
+            long low = from - 1 >= fromWord ? src[from - 1] : 0L;
+            dst[w] = bitShift == 0 ? high : (high << bitShift) | (low >>> (64 - bitShift));
+        }
+        if (toWord == words - 1) {
+            dst[words - 1] &= lastWordMask;
+        }
+    }
+
+    private static int gemIndex(char gem) {
+        switch (gem) {
+            case 'R':
+                return 0;
+            case 'G':
+                return 1;
+            case 'B':
+                return 2;
+            case 'Y':
+                return 3;
+            case 'P':
+                return 4;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Arrays;
+
+// Immutable picture of a board for what-if analysis: 3 bits per cell (empty, the five colours or 'M'),
+// 21 cells to a long, one small array per row. Snapshots never change, so handing one out or keeping
+// it is free. An Editor starts out sharing every row with its snapshot and copies a row only on its
+// first write there, so trying a move costs the rows it touches. The Zobrist hash is carried along
+// and equals the hash the same cells have on any GemBoard.
+public final class BoardSnapshot {
+
+    private static final int BITS = 3;
+    private static final int CELLS_PER_WORD = Long.SIZE / BITS;
+    private static final long CELL_MASK = (1L << BITS) - 1;
+    private static final String GEMS = " RGBYPM"; // Code 0 is empty, then Zobrist's gem order
+
+    private final int rows;
+    private final int cols;
+    private final long[][] cells; // Shared with other snapshots and editors, never written once published
+    private final long hash;
+
+    private BoardSnapshot(int rows, int cols, long[][] cells, long hash) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells;
+        this.hash = hash;
+    }
+
+    public static BoardSnapshot of(GemBoard board) {
+        int rows = board.rows();
+        int cols = board.cols();
+        int words = (cols + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+        long[][] cells = new long[rows][words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                cells[row][col / CELLS_PER_WORD] |= (long) code(board.get(row, col)) << (col % CELLS_PER_WORD * BITS);
+            }
+        }
+        return new BoardSnapshot(rows, cols, cells, board.hash());
+    }
+
+    public static BoardSnapshot empty(int rows, int cols) {
+        int words = (cols + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+        long[] emptyRow = new long[words];
+        long[][] cells = new long[rows][];
+        Arrays.fill(cells, emptyRow); // Nobody writes into a shared row
+        return new BoardSnapshot(rows, cols, cells, 0L);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public char get(int row, int col) {
+        return decode(cells[row], col);
+    }
+
+    public boolean isEmpty(int row, int col) {
+        return get(row, col) == ' ';
+    }
+
+    // Row of the highest stone in the column, rows() if it is empty
+    public int top(int col) {
+        int row = 0;
+        while (row < rows && isEmpty(row, col)) {
+            row++;
+        }
+        return row;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    // O(1): nothing is copied until the editor writes.
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    public BoardSnapshot with(int row, int col, char gem) {
+        return edit().set(row, col, gem).snapshot();
+    }
+
+    // Replace the board's cells with this snapshot's; the board must have the same size.
+    public void copyTo(GemBoard board) {
+        if (board.rows() != rows || board.cols() != cols) {
+            throw new IllegalArgumentException("Snapshot is " + rows + "x" + cols + ", board is "
+                    + board.rows() + "x" + board.cols());
+        }
+        board.clear();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                char gem = get(row, col);
+                if (gem != ' ') {
+                    board.set(row, col, gem);
+                }
+            }
+        }
+    }
+
+    // A new board on the backend that suits the size (GemBoard.forSize) holding these cells
+    public GemBoard toBoard() {
+        GemBoard board = GemBoard.forSize(rows, cols);
+        copyTo(board);
+        return board;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BoardSnapshot other) || rows != other.rows || cols != other.cols || hash != other.hash) {
+            return false;
+        }
+        for (int row = 0; row < rows; row++) {
+            if (cells[row] != other.cells[row] && !Arrays.equals(cells[row], other.cells[row])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                text.append(get(row, col) == ' ' ? '.' : get(row, col));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    static char gem(int code) {
+        return GEMS.charAt(code);
+    }
+
+    private static char decode(long[] row, int col) {
+        return GEMS.charAt((int) (row[col / CELLS_PER_WORD] >>> (col % CELLS_PER_WORD * BITS) & CELL_MASK));
+    }
+
+    // 3-bit code of a cell: 0 for empty, then R, G, B, Y, P and M; other formats reuse it
+    static int code(char gem) {
+        int code = GEMS.indexOf(gem);
+        if (code < 0) {
+            throw new IllegalArgumentException("Not a gem: '" + gem + "'");
+        }
+        return code;
+    }
+
+    // Mutable copy-on-write view of a snapshot. snapshot() publishes the edits without copying them;
+    // the editor then shares its rows again and copies anew before writing on.
+    public static final class Editor {
+
+        private final int rows;
+        private final int cols;
+        private long[][] cells;
+        private boolean[] owned; // Rows this editor has copied and may write, null while it owns none
+        private long hash;
+
+        private Editor(BoardSnapshot snapshot) {
+            this.rows = snapshot.rows;
+            this.cols = snapshot.cols;
+            this.cells = snapshot.cells;
+            this.hash = snapshot.hash;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int cols() {
+            return cols;
+        }
+
+        public char get(int row, int col) {
+            return decode(cells[row], col);
+        }
+
+        public boolean isEmpty(int row, int col) {
+            return get(row, col) == ' ';
+        }
+
+        public Editor set(int row, int col, char gem) {
+            int code = code(gem);
+            char old = get(row, col);
+            if (old == gem) {
+                return this;
+            }
+            if (owned == null) {
+                cells = cells.clone(); // The row table is the snapshot's too
+                owned = new boolean[rows];
+            }
+            if (!owned[row]) {
+                cells[row] = cells[row].clone();
+                owned[row] = true;
+            }
+            int shift = col % CELLS_PER_WORD * BITS;
+            long[] words = cells[row];
+            words[col / CELLS_PER_WORD] = words[col / CELLS_PER_WORD] & ~(CELL_MASK << shift) | (long) code << shift;
+            int cell = row * cols + col;
+            hash ^= Zobrist.key(cell, old) ^ Zobrist.key(cell, gem);
+            return this;
+        }
+
+        public BoardSnapshot snapshot() {
+            owned = null; // The published rows must not change any more
+            return new BoardSnapshot(rows, cols, cells, hash);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// The chain one landing set off, worked out up front by CascadeResolver. The engine's board is already
+// past it; this is what the renderer replays. It keeps the board as the first link was marked and, for
+// every link, the matched cells followed by the gravity moves that came after clearing them, all in one
+// int array:
+//   cleared count, cell..., move count, (from cell << 16 | to cell)...
+// Cells are row * cols + col; moves are listed bottom-up per column, so they can be applied in order.
+// Boards above MAX_RECORDED_CELLS are only run headless, so their chains keep just the link count.
+// The resolver owns two of these and fills them in turn, so a landing allocates nothing and the chain
+// being shown is never the one the next landing overwrites.
+final class Cascade {
+
+    static final int MAX_RECORDED_CELLS = 1 << 16;
+
+    private final int cols;
+    private final char[] start; // Board with the first link's matches marked 'M', row by row; null if not recorded
+    private int[] steps = new int[0];
+    private int[] linkOffsets = new int[0]; // Where each link starts in steps
+    private int links;
+    private int cleared;
+
+    // Links only, nothing recorded
+    Cascade() {
+        this(0, 0);
+    }
+
+    // Recorded chains of a rows x cols board
+    Cascade(int rows, int cols) {
+        this.cols = cols;
+        this.start = cols == 0 ? null : new char[rows * cols];
+    }
+
+    void setLinks(int links) {
+        this.links = links;
+        this.cleared = -1;
+    }
+
+    // Take over a chain the resolver recorded; the arrays are copied, growing ours only when too small.
+    void record(int links, char[] start, int[] steps, int size, int[] linkOffsets, int cleared) {
+        System.arraycopy(start, 0, this.start, 0, this.start.length);
+        if (this.steps.length < size) {
+            this.steps = new int[steps.length];
+        }
+        System.arraycopy(steps, 0, this.steps, 0, size);
+        if (this.linkOffsets.length < links) {
+            this.linkOffsets = new int[linkOffsets.length];
+        }
+        System.arraycopy(linkOffsets, 0, this.linkOffsets, 0, links);
+        this.links = links;
+        this.cleared = cleared;
+    }
+
+    int links() {
+        return links;
+    }
+
+    // Whether the links were recorded and can be replayed
+    boolean isRecorded() {
+        return start != null;
+    }
+
+    // Cells of the recorded board, 0 if not recorded
+    int cells() {
+        return start == null ? 0 : start.length;
+    }
+
+    // Stones cleared over all links, -1 if not recorded
+    int cleared() {
+        return cleared;
+    }
+
+    // Set the board to how it looked when the stone landed: the first link's matches marked.
+    void reset(GemBoard board) {
+        for (int i = 0; i < start.length; i++) {
+            board.set(i / cols, i % cols, start[i]);
+        }
+    }
+
+    // Clear the given link's matches, let the stones fall and mark the next link's matches.
+    void advance(GemBoard board, int link) {
+        int offset = linkOffsets[link];
+        int clearedCount = steps[offset++];
+        for (int i = 0; i < clearedCount; i++) {
+            int cell = steps[offset++];
+            board.set(cell / cols, cell % cols, ' ');
+        }
+        int moveCount = steps[offset++];
+        for (int i = 0; i < moveCount; i++) {
+            int from = steps[offset] >>> 16;
+            int to = steps[offset++] & 0xFFFF;
+            board.set(to / cols, to % cols, board.get(from / cols, from % cols));
+            board.set(from / cols, from % cols, ' ');
+        }
+        if (link + 1 < links()) {
+            offset = linkOffsets[link + 1];
+            int marked = steps[offset++];
+            for (int i = 0; i < marked; i++) {
+                int cell = steps[offset++];
+                board.set(cell / cols, cell % cols, 'M');
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("hiddengems.Cascade")
+@Label("Cascade")
+@Category("Hidden Gems")
+@Description("Resolving the chain a landing set off, from the first match until no match is left")
+final class CascadeEvent extends jdk.jfr.Event {
+
+    @Label("Links")
+    int links;
+
+    @Label("Stones Cleared")
+    int stonesCleared;
+
+    @Label("Occupancy")
+    @Description("Gems on the board when the cascade ended")
+    int occupancy;
+}
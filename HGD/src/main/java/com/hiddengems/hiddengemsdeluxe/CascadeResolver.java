@@ -0,0 +1,140 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Arrays;
+
+// Resolves everything a landing sets off in one pass: mark the matches, check for a full column, clear,
+// let the stones fall, repeat until the board is stable. The board ends up final and the chain comes
+// back as a Cascade for the renderer; boards too large to show only report how many links there were.
+// The scratch buffers are kept between landings and the two Cascades are filled in turn.
+final class CascadeResolver {
+
+    private final MatchEvent event = new MatchEvent(); // Reused for every pass, like the engine's events
+    private final Cascade[] cascades = new Cascade[2];
+    private int nextCascade;
+    private char[] start = new char[0];
+    private int[] steps = new int[256];
+    private int size;
+    private int[] linkOffsets = new int[8];
+    private int links;
+    private boolean gameOver;
+
+    // Resolve the board after a landing. Returns null if nothing matched; isGameOver() tells whether a
+    // full column ended the game, in which case the matches of that last pass stay marked on the board.
+    Cascade resolve(GemBoard board) {
+        size = 0;
+        links = 0;
+        gameOver = false;
+        boolean record = board.rows() * board.cols() <= Cascade.MAX_RECORDED_CELLS;
+        boolean started = false;
+        int cleared = 0;
+        while (true) {
+            event.begin();
+            boolean matchesFound = board.markMatches(); // Пребоядисване на съвпаденията в магента
+            gameOver = board.hasFullColumn(GameEngine.fullColumnStones(board.rows()));
+            event.end();
+            if (event.shouldCommit()) {
+                event.matchesFound = matchesFound;
+                event.occupancy = GameEngine.countStones(board);
+                event.commit();
+            }
+            if (!matchesFound || gameOver) {
+                break;
+            }
+            if (!record) {
+                links++;
+                board.clearMarked();
+                board.collapse();
+                continue;
+            }
+            if (!started) {
+                snapshot(board);
+                started = true;
+            }
+            if (links == linkOffsets.length) {
+                linkOffsets = Arrays.copyOf(linkOffsets, links * 2);
+            }
+            linkOffsets[links++] = size;
+            cleared += recordMarked(board);
+            board.clearMarked();
+            recordMoves(board);
+            board.collapse();
+        }
+        if (links == 0) {
+            return null;
+        }
+        Cascade cascade = nextCascade(board, record);
+        if (record) {
+            cascade.record(links, start, steps, size, linkOffsets, cleared);
+        } else {
+            cascade.setLinks(links);
+        }
+        return cascade;
+    }
+
+    // The Cascade not handed out last time, made again only when the board size changes
+    private Cascade nextCascade(GemBoard board, boolean record) {
+        nextCascade ^= 1;
+        Cascade cascade = cascades[nextCascade];
+        if (cascade == null || cascade.isRecorded() != record || cascade.cells() != start.length) {
+            cascade = record ? new Cascade(board.rows(), board.cols()) : new Cascade();
+            cascades[nextCascade] = cascade;
+        }
+        return cascade;
+    }
+
+    boolean isGameOver() {
+        return gameOver;
+    }
+
+    private int recordMarked(GemBoard board) {
+        int countAt = size;
+        add(0);
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                if (board.get(row, col) == 'M') {
+                    add(row * board.cols() + col);
+                }
+            }
+        }
+        int count = size - countAt - 1;
+        steps[countAt] = count;
+        return count;
+    }
+
+    // The moves collapse() is about to make: every gem drops onto the one below it, bottom-up
+    private void recordMoves(GemBoard board) {
+        int countAt = size;
+        add(0);
+        int cols = board.cols();
+        for (int col = 0; col < cols; col++) {
+            int emptyRow = board.rows() - 1;
+            for (int row = board.rows() - 1; row >= 0; row--) {
+                if (!board.isEmpty(row, col)) {
+                    if (emptyRow != row) {
+                        add((row * cols + col) << 16 | (emptyRow * cols + col));
+                    }
+                    emptyRow--;
+                }
+            }
+        }
+        steps[countAt] = size - countAt - 1;
+    }
+
+    private void add(int value) {
+        if (size == steps.length) {
+            steps = Arrays.copyOf(steps, size * 2);
+        }
+        steps[size++] = value;
+    }
+
+    private void snapshot(GemBoard board) {
+        if (start.length != board.rows() * board.cols()) {
+            start = new char[board.rows() * board.cols()];
+        }
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                start[row * board.cols() + col] = board.get(row, col);
+            }
+        }
+    }
+}
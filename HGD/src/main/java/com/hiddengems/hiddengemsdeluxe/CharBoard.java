@@ -0,0 +1,431 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Reference board: one char per cell and plain scalar scans. Other backends must give the same results.
+// markMatches() only follows the runs through cells that changed since the last pass;
+// markAllMatches() is the original full-board scan and the reference for it.
+// With a fork-join pool (by default on boards of PARALLEL_CELLS and up) the board-wide passes are split
+// into stripes: matching and clearing by rows, gravity and the full-column check by columns. Matching
+// looks for runs first and only marks them once every stripe is done, so a run crossing into the next
+// stripe is read before anything changes. Gravity moves too many cells to track one by one, so after a
+// parallel collapse the next match pass scans the whole board.
+public final class CharBoard implements GemBoard {
+
+    static final int PARALLEL_CELLS = 1 << 16;
+    private static final int STRIPE_CELLS = 1 << 14; // Work per fork-join task
+
+    private final int rows;
+    private final int cols;
+    private final char[][] gameBoard;
+    private final DirtyCells dirty;
+    private final ColumnTops tops;
+    private long hash;
+    private final ForkJoinPool pool; // null runs every pass on the calling thread
+    private boolean rescan = false; // The next match pass has to look at every cell
+
+    // Passes that also run on game-sized boards, bound once so that calling them allocates nothing
+    private final Stripes.Work hasMarkedWork = this::hasMarked;
+    private final Stripes.Work clearMarkedWork = this::clearMarked;
+    private final Stripes.Work fullColumnWork = this::hasFullColumn;
+    private int fullColumnStones; // Run length fullColumnWork looks for
+
+    // Cells found by the localized matcher, applied once every dirty cell has been checked
+    private final boolean[] matched;
+    private final int[] matchedCells;
+    private int matchedCount;
+
+    public CharBoard(int rows, int cols) {
+        this(rows, cols, rows * cols >= PARALLEL_CELLS ? ForkJoinPool.commonPool() : null);
+    }
+
+    public CharBoard(int rows, int cols, ForkJoinPool pool) {
+        this.rows = rows;
+        this.cols = cols;
+        this.pool = pool;
+        this.gameBoard = new char[rows][cols];
+        this.dirty = new DirtyCells(rows, cols);
+        this.tops = new ColumnTops(rows, cols);
+        this.matched = new boolean[rows * cols];
+        this.matchedCells = new int[rows * cols];
+        clear();
+    }
+
+    private CharBoard(CharBoard other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.gameBoard = new char[rows][];
+        for (int row = 0; row < rows; row++) {
+            gameBoard[row] = other.gameBoard[row].clone();
+        }
+        this.dirty = new DirtyCells(rows, cols);
+        this.dirty.copyFrom(other.dirty);
+        this.tops = new ColumnTops(rows, cols);
+        this.tops.copyFrom(other.tops);
+        this.hash = other.hash;
+        this.pool = other.pool;
+        this.rescan = other.rescan;
+        this.matched = new boolean[rows * cols];
+        this.matchedCells = new int[rows * cols];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public char get(int row, int col) {
+        return gameBoard[row][col];
+    }
+
+    @Override
+    public void set(int row, int col, char gem) {
+        int cell = row * cols + col;
+        hash ^= Zobrist.key(cell, gameBoard[row][col]) ^ Zobrist.key(cell, gem);
+        gameBoard[row][col] = gem;
+        if (GameEngine.isColor(gem)) {
+            dirty.add(row, col);
+        }
+        if (gem == ' ') {
+            tops.emptied(row, col, this);
+        } else {
+            tops.filled(row, col);
+        }
+    }
+
+    @Override
+    public int top(int col) {
+        return tops.get(col);
+    }
+
+    @Override
+    public void clear() {
+        // Initialize game board with empty spaces
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                gameBoard[row][col] = ' ';
+            }
+        }
+        dirty.reset();
+        tops.reset();
+        rescan = false;
+        hash = 0;
+    }
+
+    @Override
+    public boolean markMatches() {
+        if (pool != null && (rescan || dirty.size() > rows * cols / 8)) {
+            dirty.reset();
+            rescan = false;
+            return markMatchesInStripes();
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            int row = dirty.row(i);
+            int col = dirty.col(i);
+            char current = gameBoard[row][col];
+            if (GameEngine.isColor(current)) {
+                collectRun(row, col, current, 0, 1);  // horizontal
+                collectRun(row, col, current, 1, 0);  // vertical
+                collectRun(row, col, current, 1, 1);  // diagonal, top left to bottom right
+                collectRun(row, col, current, 1, -1); // diagonal, top right to bottom left
+            }
+        }
+        dirty.reset();
+
+        for (int i = 0; i < matchedCount; i++) {
+            int index = matchedCells[i];
+            hash ^= Zobrist.key(index, gameBoard[index / cols][index % cols]) ^ Zobrist.key(index, 'M');
+            gameBoard[index / cols][index % cols] = 'M'; // 'M' за Magenta
+            matched[index] = false;
+        }
+        boolean matchesFound = matchedCount > 0;
+        matchedCount = 0;
+        return matchesFound;
+    }
+
+    // Walk the line through (row, col) in both directions and remember the run if it is at least three long.
+    private void collectRun(int row, int col, char current, int rowStep, int colStep) {
+        int before = 0;
+        while (sameGem(row - (before + 1) * rowStep, col - (before + 1) * colStep, current)) {
+            before++;
+        }
+        int after = 0;
+        while (sameGem(row + (after + 1) * rowStep, col + (after + 1) * colStep, current)) {
+            after++;
+        }
+        if (before + after + 1 < 3) {
+            return;
+        }
+        for (int i = -before; i <= after; i++) {
+            int index = (row + i * rowStep) * cols + col + i * colStep;
+            if (!matched[index]) {
+                matched[index] = true;
+                matchedCells[matchedCount++] = index;
+            }
+        }
+    }
+
+    private boolean sameGem(int row, int col, char current) {
+        return row >= 0 && row < rows && col >= 0 && col < cols && gameBoard[row][col] == current;
+    }
+
+    // Full scan in row stripes: find every run starting in the stripe (it may reach two rows into the
+    // next one), then, once all stripes are done, turn the found cells into 'M'.
+    private boolean markMatchesInStripes() {
+        int grain = rowGrain();
+        boolean found = Stripes.run(pool, rows, grain, this::findRuns, (a, b) -> a | b) != 0;
+        if (found) {
+            hash ^= Stripes.run(pool, rows, grain, this::markFound, (a, b) -> a ^ b);
+        }
+        return found;
+    }
+
+    private long findRuns(int fromRow, int toRow) {
+        long found = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < cols; col++) {
+                char current = gameBoard[row][col];
+                if (GameEngine.isColor(current)) {
+                    found |= findRun(row, col, current, 0, 1)  // horizontal
+                            | findRun(row, col, current, 1, 0)  // vertical
+                            | findRun(row, col, current, 1, 1)  // diagonal, top left to bottom right
+                            | findRun(row, col, current, 1, -1); // diagonal, top right to bottom left
+                }
+            }
+        }
+        return found;
+    }
+
+    // Three in a row starting at (row, col); other stripes may flag the same cells, always with true
+    private long findRun(int row, int col, char current, int rowStep, int colStep) {
+        if (!sameGem(row + rowStep, col + colStep, current) || !sameGem(row + 2 * rowStep, col + 2 * colStep, current)) {
+            return 0;
+        }
+        for (int i = 0; i < 3; i++) {
+            matched[(row + i * rowStep) * cols + col + i * colStep] = true;
+        }
+        return 1;
+    }
+
+    private long markFound(int fromRow, int toRow) {
+        long hashDelta = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < cols; col++) {
+                int index = row * cols + col;
+                if (matched[index]) {
+                    matched[index] = false;
+                    hashDelta ^= Zobrist.key(index, gameBoard[row][col]) ^ Zobrist.key(index, 'M');
+                    gameBoard[row][col] = 'M'; // 'M' за Magenta
+                }
+            }
+        }
+        return hashDelta;
+    }
+
+    private int rowGrain() {
+        return Math.max(1, STRIPE_CELLS / cols);
+    }
+
+    private int columnGrain() {
+        return Math.max(1, STRIPE_CELLS / rows);
+    }
+
+    // Full scan of the whole board, independent of which cells changed.
+    public boolean markAllMatches() {
+        dirty.reset();
+        boolean[][] toClear = new boolean[rows][cols];
+        boolean matchesFound = false;
+
+        // Проверка за хоризонтални съвпадения
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols - 2; col++) {
+                char current = gameBoard[row][col];
+                if (GameEngine.isColor(current) && gameBoard[row][col + 1] == current && gameBoard[row][col + 2] == current) {
+                    toClear[row][col] = true;
+                    toClear[row][col + 1] = true;
+                    toClear[row][col + 2] = true;
+                    matchesFound = true;
+                }
+            }
+        }
+
+        // Проверка за вертикални съвпадения
+        for (int col = 0; col < cols; col++) {
+            for (int row = 0; row < rows - 2; row++) {
+                char current = gameBoard[row][col];
+                if (GameEngine.isColor(current) && gameBoard[row + 1][col] == current && gameBoard[row + 2][col] == current) {
+                    toClear[row][col] = true;
+                    toClear[row + 1][col] = true;
+                    toClear[row + 2][col] = true;
+                    matchesFound = true;
+                }
+            }
+        }
+
+        // Проверка за диагонални съвпадения (от горе ляво до долу дясно)
+        for (int row = 0; row < rows - 2; row++) {
+            for (int col = 0; col < cols - 2; col++) {
+                char current = gameBoard[row][col];
+                if (GameEngine.isColor(current) && gameBoard[row + 1][col + 1] == current && gameBoard[row + 2][col + 2] == current) {
+                    toClear[row][col] = true;
+                    toClear[row + 1][col + 1] = true;
+                    toClear[row + 2][col + 2] = true;
+                    matchesFound = true;
+                }
+            }
+        }
+
+        // Проверка за диагонални съвпадения (от горе дясно до долу ляво)
+        for (int row = 0; row < rows - 2; row++) {
+            for (int col = 2; col < cols; col++) {
+                char current = gameBoard[row][col];
+                if (GameEngine.isColor(current) && gameBoard[row + 1][col - 1] == current && gameBoard[row + 2][col - 2] == current) {
+                    toClear[row][col] = true;
+                    toClear[row + 1][col - 1] = true;
+                    toClear[row + 2][col - 2] = true;
+                    matchesFound = true;
+                }
+            }
+        }
+
+        // Пребоядисване на маркерите в магента
+        if (matchesFound) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    if (toClear[row][col]) {
+                        int cell = row * cols + col;
+                        hash ^= Zobrist.key(cell, gameBoard[row][col]) ^ Zobrist.key(cell, 'M');
+                        gameBoard[row][col] = 'M'; // 'M' за Magenta
+                    }
+                }
+            }
+        }
+        return matchesFound;
+    }
+
+    @Override
+    public boolean hasMarked() {
+        return Stripes.run(pool, rows, rowGrain(), hasMarkedWork, (a, b) -> a | b) != 0;
+    }
+
+    private long hasMarked(int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (gameBoard[row][col] == 'M') {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void clearMarked() {
+        hash ^= Stripes.run(pool, rows, rowGrain(), clearMarkedWork, (a, b) -> a ^ b);
+        for (int col = 0; col < cols; col++) {
+            tops.refresh(col, this);
+        }
+    }
+
+    private long clearMarked(int fromRow, int toRow) {
+        long hashDelta = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (gameBoard[row][col] == 'M') {
+                    hashDelta ^= Zobrist.key(row * cols + col, Zobrist.MARKED);
+                    gameBoard[row][col] = ' '; // Изчисти камъка
+                }
+            }
+        }
+        return hashDelta;
+    }
+
+    @Override
+    public void collapse() {
+        if (pool != null) {
+            hash ^= Stripes.run(pool, cols, columnGrain(), this::collapseColumns, (a, b) -> a ^ b);
+            rescan = true;
+            return;
+        }
+        for (int col = 0; col < cols; col++) {
+            int emptyRow = rows - 1;
+            for (int row = rows - 1; row >= 0; row--) {
+                if (gameBoard[row][col] != ' ') {
+                    char temp = gameBoard[row][col];
+                    gameBoard[row][col] = ' ';
+                    gameBoard[emptyRow][col] = temp;
+                    if (emptyRow != row) {
+                        dirty.add(emptyRow, col);
+                        hash ^= Zobrist.key(row * cols + col, temp) ^ Zobrist.key(emptyRow * cols + col, temp);
+                    }
+                    emptyRow--;
+                }
+            }
+            tops.settled(col, rows - 1 - emptyRow);
+        }
+    }
+
+    // The same compaction for a stripe of columns; moved cells are left to the rescan
+    private long collapseColumns(int fromCol, int toCol) {
+        long hashDelta = 0;
+        for (int col = fromCol; col < toCol; col++) {
+            int emptyRow = rows - 1;
+            for (int row = rows - 1; row >= 0; row--) {
+                char temp = gameBoard[row][col];
+                if (temp != ' ') {
+                    if (emptyRow != row) {
+                        gameBoard[row][col] = ' ';
+                        gameBoard[emptyRow][col] = temp;
+                        hashDelta ^= Zobrist.key(row * cols + col, temp) ^ Zobrist.key(emptyRow * cols + col, temp);
+                    }
+                    emptyRow--;
+                }
+            }
+            tops.settled(col, rows - 1 - emptyRow); // Columns belong to one stripe, so no two tasks share a slot
+        }
+        return hashDelta;
+    }
+
+    @Override
+    public boolean hasFullColumn(int stones) {
+        if (tops.tallest() < stones) {
+            return false; // No column is even that high
+        }
+        fullColumnStones = stones;
+        return Stripes.run(pool, cols, columnGrain(), fullColumnWork, (a, b) -> a | b) != 0;
+    }
+
+    private long hasFullColumn(int fromCol, int toCol) {
+        int stones = fullColumnStones;
+        for (int col = fromCol; col < toCol; col++) {
+            int consecutiveStones = 0;
+            for (int row = 0; row < rows; row++) {
+                if (GameEngine.isColor(gameBoard[row][col])) {
+                    consecutiveStones++;
+                    if (consecutiveStones >= stones) {
+                        return 1; // Column is full
+                    }
+                } else {
+                    consecutiveStones = 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public CharBoard copy() {
+        return new CharBoard(this);
+    }
+}
@@ -0,0 +1,158 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Random;
+
+// The "falling code" behind the board. Every column keeps its head position, speed and glyph in
+// primitive arrays and moves by elapsed time; glyphs come from a pre-rendered atlas. A column is only
+// repainted when its head steps into the next row, so a frame allocates nothing and the work is
+// bounded by the number of active columns, which the density controls.
+final class CodeRain {
+
+    static final double DEFAULT_DENSITY = 1.0; // Fraction of the 15 px columns that carry a drop
+
+    private static final String GLYPHS = "01ABCDEF"; // Characters to fall
+    private static final double FONT_SIZE = 12;
+    private static final double COLUMN_WIDTH = 15; // Adjusted to the font size
+    private static final double ROW_HEIGHT = 15;
+    private static final int TRAIL = 5; // Fading glyphs behind the head
+    private static final double MIN_SPEED = 4; // Rows per second
+    private static final double MAX_SPEED = 14;
+    private static final int NOT_DRAWN = Integer.MIN_VALUE;
+
+    private final Random random = new Random();
+    private WritableImage atlas;
+
+    private double density = DEFAULT_DENSITY;
+    private int width;
+    private int height;
+    private int rows;
+    private int columns;
+
+    private double[] columnX = new double[0];
+    private double[] head = new double[0]; // Head position in rows; negative while the drop waits above the screen
+    private double[] speed = new double[0];
+    private int[] glyph = new int[0]; // Glyph of the head, changes on every row step
+    private int[] trailSeed = new int[0]; // Picks the glyphs left behind in the trail
+    private int[] drawnRow = new int[0]; // Head row currently on the canvas
+    private boolean layerValid = false;
+
+    void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        if (atlas == null) {
+            buildAtlas();
+        }
+        layout();
+    }
+
+    // Share of the columns that rain, from 0 (off) to 1 (every column).
+    void setDensity(double density) {
+        this.density = Math.max(0, Math.min(1, density));
+        layout();
+    }
+
+    private void layout() {
+        int slots = (int) Math.ceil(width / COLUMN_WIDTH);
+        rows = (int) Math.ceil(height / ROW_HEIGHT);
+        columns = (int) Math.round(slots * density);
+        if (columnX.length < columns) {
+            columnX = new double[columns];
+            head = new double[columns];
+            speed = new double[columns];
+            glyph = new int[columns];
+            trailSeed = new int[columns];
+            drawnRow = new int[columns];
+        }
+        for (int i = 0; i < columns; i++) {
+            columnX[i] = (int) ((long) i * slots / columns) * COLUMN_WIDTH; // Spread evenly over the slots
+            restart(i);
+            head[i] = random.nextDouble() * (rows + TRAIL) - TRAIL; // Start mid-fall so the screen is not empty
+        }
+        layerValid = false;
+    }
+
+    private void restart(int i) {
+        head[i] = -random.nextDouble() * rows; // Wait a random time above the screen
+        speed[i] = MIN_SPEED + random.nextDouble() * (MAX_SPEED - MIN_SPEED);
+        glyph[i] = random.nextInt(GLYPHS.length());
+        trailSeed[i] = random.nextInt();
+    }
+
+    void advance(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        for (int i = 0; i < columns; i++) {
+            int row = (int) Math.floor(head[i]);
+            head[i] += speed[i] * seconds;
+            if (head[i] - TRAIL >= rows) {
+                restart(i);
+            } else if ((int) Math.floor(head[i]) != row) {
+                glyph[i] = random.nextInt(GLYPHS.length());
+            }
+        }
+    }
+
+    // Returns the number of columns repainted.
+    int draw(GraphicsContext gc) {
+        int repainted = 0;
+        if (!layerValid) {
+            gc.clearRect(0, 0, width, height);
+            for (int i = 0; i < columns; i++) {
+                drawnRow[i] = NOT_DRAWN;
+            }
+            layerValid = true;
+        }
+
+        for (int i = 0; i < columns; i++) {
+            int headRow = (int) Math.floor(head[i]);
+            if (headRow == drawnRow[i] || (headRow < 0 && drawnRow[i] < 0)) {
+                continue; // Nothing moved on screen
+            }
+            if (drawnRow[i] >= 0) {
+                gc.clearRect(columnX[i], (drawnRow[i] - TRAIL) * ROW_HEIGHT, COLUMN_WIDTH, (TRAIL + 1) * ROW_HEIGHT);
+            }
+            for (int t = TRAIL; t > 0; t--) {
+                int row = headRow - t;
+                if (row >= 0 && row < rows) {
+                    gc.setGlobalAlpha((double) (TRAIL + 1 - t) / (TRAIL + 1));
+                    drawGlyph(gc, trailGlyph(i, row), columnX[i], row * ROW_HEIGHT);
+                }
+            }
+            gc.setGlobalAlpha(1.0);
+            if (headRow >= 0 && headRow < rows) {
+                drawGlyph(gc, glyph[i], columnX[i], headRow * ROW_HEIGHT);
+            }
+            drawnRow[i] = headRow;
+            repainted++;
+        }
+        return repainted;
+    }
+
+    private int trailGlyph(int column, int row) {
+        int hash = (trailSeed[column] + row) * 0x9E3779B9;
+        return (hash >>> 16) % GLYPHS.length();
+    }
+
+    private void drawGlyph(GraphicsContext gc, int index, double x, double y) {
+        gc.drawImage(atlas, index * COLUMN_WIDTH, 0, COLUMN_WIDTH, ROW_HEIGHT, x, y, COLUMN_WIDTH, ROW_HEIGHT);
+    }
+
+    private void buildAtlas() {
+        Canvas scratch = new Canvas(GLYPHS.length() * COLUMN_WIDTH, ROW_HEIGHT);
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.setFont(new Font("Courier New", FONT_SIZE));
+        gc.setFill(Color.GREEN); // Color for falling code
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            gc.fillText(String.valueOf(GLYPHS.charAt(i)), i * COLUMN_WIDTH, FONT_SIZE);
+        }
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        atlas = scratch.snapshot(params, null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Arrays;
+
+// Row of the highest stone in every column (rows for an empty column), kept up to date by the board
+// so that collision checks, the hard drop and the landing preview never scan a column.
+// Cells below the top may still be empty while a cascade is between gravity passes.
+final class ColumnTops {
+
+    private final int rows;
+    private final int[] tops;
+
+    ColumnTops(int rows, int cols) {
+        this.rows = rows;
+        this.tops = new int[cols];
+        reset();
+    }
+
+    int get(int col) {
+        return tops[col];
+    }
+
+    // Stones in the tallest column, counting holes below its top
+    int tallest() {
+        int top = rows;
+        for (int t : tops) {
+            top = Math.min(top, t);
+        }
+        return rows - top;
+    }
+
+    // A stone was put into (row, col)
+    void filled(int row, int col) {
+        if (row < tops[col]) {
+            tops[col] = row;
+        }
+    }
+
+    // (row, col) was emptied; only the top stone moves the top, down to the next stone below it
+    void emptied(int row, int col, GemBoard board) {
+        if (row == tops[col]) {
+            refresh(col, board);
+        }
+    }
+
+    // Walk down from the recorded top, which can only be too high after stones were removed
+    void refresh(int col, GemBoard board) {
+        int top = tops[col];
+        while (top < rows && board.isEmpty(top, col)) {
+            top++;
+        }
+        tops[col] = top;
+    }
+
+    // The column was compacted and holds this many stones against the bottom row
+    void settled(int col, int stones) {
+        tops[col] = rows - stones;
+    }
+
+    void reset() {
+        Arrays.fill(tops, rows);
+    }
+
+    void copyFrom(ColumnTops other) {
+        System.arraycopy(other.tops, 0, tops, 0, tops.length);
+    }
+}
@@ -0,0 +1,151 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+// Toggleable frame statistics on top of the game: FPS, frame interval and loop work percentiles,
+// repaints per second of every renderer layer, the FX thread's allocation rate and the input latency:
+// from a key press to the end of the pulse that rendered its effect, which the scene then puts on screen.
+// The process CPU use is shown against GameLoop.IDLE_CPU_TARGET while the loop is idle.
+// Samples are taken every frame; the numbers are recomputed and drawn twice a second.
+final class DebugOverlay {
+
+    private static final int HISTORY = 256; // Frames kept for the percentiles
+    private static final long WINDOW_NANOS = 500_000_000L;
+    private static final double PANEL_X = 10;
+    private static final double PANEL_Y = 10;
+    private static final double LINE_HEIGHT = 16;
+
+    private final Canvas layer = new Canvas();
+    private final GameRenderer renderer;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final Font font = new Font("Courier New", 13);
+
+    private final long[] frameNanos = new long[HISTORY];
+    private final long[] workNanos = new long[HISTORY];
+    private final long[] sorted = new long[HISTORY];
+    private int samples = 0;
+    private int next = 0;
+
+    private final long[] inputNanos = new long[HISTORY];
+    private int inputSamples = 0;
+    private int nextInput = 0;
+
+    private long windowNanos = 0;
+    private int windowFrames = 0;
+    private long windowAllocated = -1;
+    private long windowCpu = -1; // Process CPU time at the start of the window
+    private boolean windowIdle = true; // Whether every frame of the window was an idle one
+    private final long[] windowRepaints = new long[GameRenderer.LAYER_NAMES.length];
+
+    private boolean visible = false;
+
+    DebugOverlay(GameRenderer renderer) {
+        this.renderer = renderer;
+        layer.setMouseTransparent(true);
+        layer.setVisible(false);
+    }
+
+    Canvas layer() {
+        return layer;
+    }
+
+    void resize(int width, int height) {
+        layer.setWidth(width);
+        layer.setHeight(height);
+    }
+
+    void toggle() {
+        visible = !visible;
+        layer.setVisible(visible);
+    }
+
+    void recordInputLatency(long nanos) {
+        inputNanos[nextInput] = nanos;
+        nextInput = (nextInput + 1) % HISTORY;
+        inputSamples = Math.min(inputSamples + 1, HISTORY);
+    }
+
+    // Called once per frame with the time since the previous one, the time the loop spent in it and
+    // whether the loop is idle.
+    void record(long frame, long work, boolean idle) {
+        frameNanos[next] = frame;
+        workNanos[next] = work;
+        next = (next + 1) % HISTORY;
+        samples = Math.min(samples + 1, HISTORY);
+
+        windowNanos += frame;
+        windowFrames++;
+        windowIdle &= idle;
+        if (windowNanos < WINDOW_NANOS) {
+            return;
+        }
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long cpu = os.getProcessCpuTime();
+        if (visible && windowAllocated >= 0) {
+            draw(allocated - windowAllocated, cpu - windowCpu);
+        }
+        windowAllocated = allocated;
+        windowCpu = cpu;
+        windowIdle = true;
+        for (int i = 0; i < windowRepaints.length; i++) {
+            windowRepaints[i] = renderer.getRepaints(i);
+        }
+        windowNanos = 0;
+        windowFrames = 0;
+    }
+
+    private void draw(long allocatedBytes, long cpuNanos) {
+        double seconds = windowNanos / 1e9;
+        String[] lines = {
+                String.format("FPS %.1f", windowFrames / seconds),
+                String.format("frame p50 %.2f ms  p99 %.2f ms", percentile(frameNanos, samples, 0.5), percentile(frameNanos, samples, 0.99)),
+                String.format("work  p50 %.2f ms  p99 %.2f ms", percentile(workNanos, samples, 0.5), percentile(workNanos, samples, 0.99)),
+                String.format("input p50 %.2f ms  p99 %.2f ms", percentile(inputNanos, inputSamples, 0.5), percentile(inputNanos, inputSamples, 0.99)),
+                String.format("alloc %.2f MB/s (FX thread)", allocatedBytes / seconds / (1024 * 1024)),
+                windowIdle
+                        ? String.format("cpu %.1f%% idle, target %.0f%%", cpuNanos / 1e7 / seconds, GameLoop.IDLE_CPU_TARGET * 100)
+                        : String.format("cpu %.1f%% of a core", cpuNanos / 1e7 / seconds),
+                "repaints/s"
+        };
+
+        GraphicsContext gc = layer.getGraphicsContext2D();
+        gc.clearRect(0, 0, layer.getWidth(), layer.getHeight());
+        int lineCount = lines.length + windowRepaints.length;
+        gc.setFill(Color.rgb(0, 0, 0, 0.7));
+        gc.fillRect(PANEL_X, PANEL_Y, 300, lineCount * LINE_HEIGHT + 10);
+
+        gc.setFont(font);
+        gc.setFill(Color.LIME);
+        double y = PANEL_Y + LINE_HEIGHT;
+        for (String line : lines) {
+            gc.fillText(line, PANEL_X + 6, y);
+            y += LINE_HEIGHT;
+        }
+        for (int i = 0; i < windowRepaints.length; i++) {
+            double rate = (renderer.getRepaints(i) - windowRepaints[i]) / seconds;
+            gc.fillText(String.format("  %-10s %6.1f", GameRenderer.LAYER_NAMES[i], rate), PANEL_X + 6, y);
+            y += LINE_HEIGHT;
+        }
+    }
+
+    // In milliseconds, over the samples kept in the history
+    private double percentile(long[] values, int samples, double p) {
+        if (samples == 0) {
+            return 0;
+        }
+        System.arraycopy(values, 0, sorted, 0, samples);
+        Arrays.sort(sorted, 0, samples);
+        int index = Math.min(samples - 1, (int) Math.ceil(p * samples) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
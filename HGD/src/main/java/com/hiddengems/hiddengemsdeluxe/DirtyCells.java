@@ -0,0 +1,53 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// Cells that received a gem since the last match pass. The board is stable after every pass,
+// so a new run of three has to go through at least one of these cells.
+final class DirtyCells {
+
+    private final int cols;
+    private final boolean[] flagged;
+    private final int[] cells;
+    private int count;
+
+    DirtyCells(int rows, int cols) {
+        this.cols = cols;
+        this.flagged = new boolean[rows * cols];
+        this.cells = new int[rows * cols];
+    }
+
+    void add(int row, int col) {
+        int index = row * cols + col;
+        if (!flagged[index]) {
+            flagged[index] = true;
+            cells[count++] = index;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    int row(int i) {
+        return cells[i] / cols;
+    }
+
+    int col(int i) {
+        return cells[i] % cols;
+    }
+
+    void reset() {
+        for (int i = 0; i < count; i++) {
+            flagged[cells[i]] = false;
+        }
+        count = 0;
+    }
+
+    void copyFrom(DirtyCells other) {
+        reset();
+        for (int i = 0; i < other.count; i++) {
+            int index = other.cells[i];
+            flagged[index] = true;
+            cells[count++] = index;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("hiddengems.Frame")
+@Label("Frame Render")
+@Category("Hidden Gems")
+@Description("One GameRenderer.render() call and the layers it repainted")
+final class FrameEvent extends jdk.jfr.Event {
+
+    @Label("Background")
+    boolean background;
+
+    @Label("Rain Columns")
+    int rainColumns;
+
+    @Label("Border")
+    boolean border;
+
+    @Label("Board Cells")
+    @Description("Board cells repainted, or every cell on a full repaint")
+    int boardCells;
+
+    @Label("Piece")
+    boolean piece;
+
+    @Label("HUD")
+    boolean hud;
+
+    @Label("Occupancy")
+    @Description("Gems on the board")
+    int occupancy;
+}
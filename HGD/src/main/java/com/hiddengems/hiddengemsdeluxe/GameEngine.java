@@ -0,0 +1,403 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Random;
+
+// Headless game rules. Nothing in here touches JavaFX: the application drives the engine
+// through tick()/step() from GameSimulation and only reads the state back to draw it.
+// A landing resolves its whole cascade on the spot; the chain is kept for the renderer to replay.
+// Ticks, match passes and cascades are reported as JFR events (TickEvent, MatchEvent, CascadeEvent).
+// For versus matches every cascade earns one garbage row per link after the first; rows sent by the
+// opponent are pushed in under the stack before the next stone spawns.
+public class GameEngine {
+
+    public static final int NUM_ROWS = 20;
+    public static final int NUM_COLS = 8;
+    public static final long FALL_DURATION_MILLIS = 1000;
+    // Defaults of GameRules
+    public static final int SCORE_INCREASE_THRESHOLD = 20; // Points needed for each speed-up
+    public static final int MAX_SPEED_UP_COUNT = 5; // Max number of times to reduce fall duration
+    public static final long FALL_DURATION_DECREMENT_MILLIS = 100; // Amount to reduce fall duration by
+    static final int STONE_LENGTH = 3;
+
+    public enum Input {
+        LEFT,
+        RIGHT,
+        DOWN,
+        ROTATE,
+        DROP // Straight to the landing row
+    }
+
+    private long seed; // The whole game follows from the seed and the inputs
+    private final Random random;
+    private final GameRules rules;
+    private final char[] palette;
+    private final GemBoard gameBoard;
+
+    // Two stones take turns: the next one starts falling and the other one is dealt as the new next
+    private final TripleStone[] stones = {
+            new TripleStone(0, 0, new char[STONE_LENGTH]), new TripleStone(0, 0, new char[STONE_LENGTH])};
+    private TripleStone fallingStone;
+    private TripleStone nextStone;
+
+    private int score = 0;
+    private int speedUpCount = 0; // Tracks how many times the fall duration has been reduced
+    private boolean gameOver = false;
+    private int stonesLanded = 0;
+    private int cascades = 0;
+    private int longestCascade = 0; // Links of the longest cascade so far
+    private int garbageEarned = 0; // Rows for the opponent, not yet taken
+    private int garbagePending = 0; // Rows to push in before the next stone
+    private int garbageRows = 0; // Rows pushed in so far this game; their colours follow on from each other
+    private final CascadeResolver resolver = new CascadeResolver();
+    // JFR events are reused rather than left to escape analysis, which does not always remove them
+    private final TickEvent tickEvent = new TickEvent();
+    private final CascadeEvent cascadeEvent = new CascadeEvent();
+    private Cascade cascade; // Set off by the last landing, null if it matched nothing
+
+    public GameEngine() {
+        this(new Random().nextLong());
+    }
+
+    public GameEngine(long seed) {
+        this(seed, new CharBoard(NUM_ROWS, NUM_COLS));
+    }
+
+    // Any board size, on the backend that suits it (GemBoard.forSize)
+    public GameEngine(long seed, int rows, int cols, GameRules rules) {
+        this(seed, GemBoard.forSize(rows, cols), rules);
+    }
+
+    // Run the rules on another board backend, e.g. a BitBoard for simulations.
+    public GameEngine(long seed, GemBoard board) {
+        this(seed, board, GameRules.DEFAULT);
+    }
+
+    public GameEngine(long seed, GemBoard board, GameRules rules) {
+        this.seed = seed;
+        this.rules = rules;
+        this.palette = rules.palette().toCharArray();
+        this.random = new Random(seed);
+        this.gameBoard = board;
+        gameBoard.clear();
+        calculateNextStone();
+    }
+
+    // Start over on the emptied board; the new game follows from the new seed like a fresh engine would.
+    public void restart(long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
+        gameBoard.clear();
+        fallingStone = null;
+        score = 0;
+        speedUpCount = 0;
+        gameOver = false;
+        stonesLanded = 0;
+        cascades = 0;
+        longestCascade = 0;
+        garbageEarned = 0;
+        garbagePending = 0;
+        garbageRows = 0;
+        cascade = null;
+        calculateNextStone();
+    }
+
+    // One gravity step: spawn a new stone if none is falling, otherwise move the falling one down.
+    public void tick() {
+        if (gameOver) {
+            return;
+        }
+        TickEvent event = tickEvent;
+        event.begin();
+        boolean spawned = fallingStone == null;
+        if (spawned) {
+            placeNewStones();
+        } else {
+            moveStonesDown();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.spawned = spawned;
+            event.landed = !spawned && fallingStone == null;
+            event.level = speedUpCount;
+            event.occupancy = countStones();
+            event.commit();
+        }
+    }
+
+    // Apply a single player input to the falling stone.
+    public void step(Input input) {
+        if (gameOver) {
+            return;
+        }
+        switch (input) {
+            case LEFT -> moveStonesLeft();
+            case RIGHT -> moveStonesRight();
+            case DOWN -> moveStonesDown();
+            case DROP -> dropStones();
+            case ROTATE -> {
+                if (fallingStone != null) {
+                    fallingStone.shiftUp();
+                }
+            }
+        }
+    }
+
+    public char getCell(int row, int col) {
+        return gameBoard.get(row, col);
+    }
+
+    GemBoard getBoard() {
+        return gameBoard;
+    }
+
+    // The board as an immutable value, for what-if analysis that must not touch the game.
+    public BoardSnapshot snapshotBoard() {
+        return BoardSnapshot.of(gameBoard);
+    }
+
+    // The falling stone as a value; null between a landing and the next stone and after game over.
+    public Piece getFallingPiece() {
+        return fallingStone == null ? null : fallingStone.toPiece();
+    }
+
+    public Piece getNextPiece() {
+        return nextStone == null ? null : nextStone.toPiece();
+    }
+
+    TripleStone getFallingStone() {
+        return fallingStone;
+    }
+
+    // Row the falling stone would land on, read from the column tops; -1 without a falling stone.
+    int getLandingRow() {
+        return fallingStone == null ? -1 : fallingStone.landingRow(gameBoard);
+    }
+
+    TripleStone getNextStone() {
+        return nextStone;
+    }
+
+    // The chain the last landing set off, already applied to the board; null if the stone matched nothing.
+    Cascade getCascade() {
+        return cascade;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return speedUpCount;
+    }
+
+    public long getFallDurationMillis() {
+        return FALL_DURATION_MILLIS - speedUpCount * rules.fallDurationDecrementMillis();
+    }
+
+    public int getRows() {
+        return gameBoard.rows();
+    }
+
+    public int getCols() {
+        return gameBoard.cols();
+    }
+
+    // A column is full once a new stone would no longer fit above its stones (17 on the 20-row board)
+    static int fullColumnStones(int rows) {
+        return rows - STONE_LENGTH;
+    }
+
+    public GameRules getRules() {
+        return rules;
+    }
+
+    public int getStonesLanded() {
+        return stonesLanded;
+    }
+
+    public int getCascades() {
+        return cascades;
+    }
+
+    public int getLongestCascade() {
+        return longestCascade;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    // Garbage rows sent by the opponent; they rise from the bottom before the next stone spawns.
+    public void addGarbage(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Garbage rows must not be negative: " + rows);
+        }
+        garbagePending += rows;
+    }
+
+    // Rows the cascades since the last call have earned for the opponent.
+    public int takeGarbage() {
+        int rows = garbageEarned;
+        garbageEarned = 0;
+        return rows;
+    }
+
+    public int getPendingGarbage() {
+        return garbagePending;
+    }
+
+    private void calculateNextStone() {
+        nextStone = nextStone == stones[0] ? stones[1] : stones[0];
+        for (int i = 0; i < nextStone.colors.length; i++) {
+            nextStone.colors[i] = getRandomColor();
+        }
+    }
+
+    private int getCenterColumn() {
+        return gameBoard.cols() / 2;
+    }
+
+    private void placeNewStones() {
+        if (garbagePending > 0) {
+            pushGarbage();
+            if (gameOver) {
+                return;
+            }
+        }
+        // Постави новия камък в централната колона
+        int centerCol = getCenterColumn();
+        fallingStone = nextStone;
+        fallingStone.row = 0;
+        fallingStone.col = centerCol;
+        calculateNextStone(); // Пресметни следващия камък
+    }
+
+    // Lift every column by the pending rows and fill the bottom with gems. Each garbage row's colours
+    // step by two palette places from column to column and by one from row to row, so with four or
+    // more colours the garbage never lines up three of a kind by itself; against the stones above it
+    // matches like any other gem on the next landing. Stones pushed off the top, or a column grown
+    // full, end the game.
+    private void pushGarbage() {
+        int rows = gameBoard.rows();
+        int cols = gameBoard.cols();
+        int lift = Math.min(garbagePending, rows);
+        garbagePending = 0;
+        for (int col = 0; col < cols; col++) {
+            if (gameBoard.top(col) < lift) {
+                gameOver = true;
+            }
+        }
+        for (int row = 0; row + lift < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                gameBoard.set(row, col, gameBoard.get(row + lift, col));
+            }
+        }
+        for (int row = rows - lift; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                gameBoard.set(row, col, palette[(garbageRows + 2 * col) % palette.length]);
+            }
+            garbageRows++;
+        }
+        if (gameBoard.hasFullColumn(fullColumnStones(rows))) {
+            gameOver = true;
+        }
+    }
+
+    private void moveStonesDown() {
+        if (fallingStone != null) {
+            boolean moved = fallingStone.moveDown(gameBoard);
+            if (!moved) {
+                landStones();
+            }
+        }
+    }
+
+    private void dropStones() {
+        if (fallingStone != null) {
+            fallingStone.hardDrop(gameBoard);
+            landStones();
+        }
+    }
+
+    private void landStones() {
+        fallingStone = null; // Stone has landed
+        stonesLanded++;
+        resolveCascade();
+    }
+
+    private void moveStonesLeft() {
+        if (fallingStone != null) {
+            fallingStone.moveLeft(gameBoard);
+        }
+    }
+
+    private void moveStonesRight() {
+        if (fallingStone != null) {
+            fallingStone.moveRight(gameBoard);
+        }
+    }
+
+    // Work out the whole chain at once; the board is stable or the game is over afterwards.
+    private void resolveCascade() {
+        CascadeEvent event = cascadeEvent;
+        event.begin();
+        cascade = resolver.resolve(gameBoard);
+        if (resolver.isGameOver()) {
+            gameOver = true;
+        }
+        if (cascade == null) {
+            return;
+        }
+        for (int link = 0; link < cascade.links(); link++) {
+            addLinkScore();
+        }
+        cascades++;
+        longestCascade = Math.max(longestCascade, cascade.links());
+        garbageEarned += cascade.links() - 1;
+        event.end();
+        if (event.shouldCommit()) {
+            event.links = cascade.links();
+            event.stonesCleared = cascade.cleared();
+            event.occupancy = countStones();
+            event.commit();
+        }
+    }
+
+    // Gems on the board, marked ones included
+    int countStones() {
+        return countStones(gameBoard);
+    }
+
+    static int countStones(GemBoard board) {
+        int stones = 0;
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                if (!board.isEmpty(row, col)) {
+                    stones++;
+                }
+            }
+        }
+        return stones;
+    }
+
+    private void addLinkScore() {
+        score += 1; // Добавяне на точки
+
+        // Check if the score has increased by a multiple of the score increase threshold
+        if (score / rules.scoreIncreaseThreshold() > speedUpCount && speedUpCount < rules.maxSpeedUpCount()) {
+            speedUpCount++;
+        }
+    }
+
+    private char getRandomColor() {
+        return palette[random.nextInt(palette.length)];
+    }
+
+    static boolean isColor(char c) {
+        return c == 'R' || c == 'G' || c == 'B' || c == 'Y' || c == 'P';
+    }
+}
@@ -0,0 +1,166 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// The only clock of the application. Once per pulse it runs as many fixed simulation ticks as the
+// elapsed time covers, advances the visual animations and renders one frame. Every pulse is a beat
+// for the StallWatchdog. Game over is reported once per game; the loop keeps running for the next one.
+// Window size changes are collected between pulses and laid out once, right before the frame is rendered.
+// While the game is paused or over only the border, the PAUSE pulse and the falling code move, so the
+// loop goes idle: the timer stops, which lets JavaFX stop pulsing, and a daemon clock asks for a frame
+// at the idle rate instead. Input and resizes wake it up again.
+// In a versus match the server's ticks drive the simulation instead of the clock (see VersusClient).
+final class GameLoop extends AnimationTimer {
+
+    static final int DEFAULT_IDLE_FPS = 10; // The PAUSE pulse steps every 100 ms, the border takes two steps a frame
+    static final double IDLE_CPU_TARGET = 0.05; // Process CPU, in cores, a paused game should stay under
+
+    private static final long TICK_NANOS = GameSimulation.TICK_MILLIS * 1_000_000L;
+    private static final long MAX_FRAME_NANOS = 250_000_000L; // Don't try to catch up on more than this after a stall
+
+    private final GameSimulation simulation;
+    private final GameRenderer renderer;
+    private final DebugOverlay overlay;
+    private final Runnable onGameOver;
+    private final StallWatchdog watchdog;
+    private final long idleFrameNanos;
+    private final ScheduledExecutorService idleClock = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "idle-frame-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable idleFrame = () -> handle(System.nanoTime()); // The timer's clock is System.nanoTime too
+
+    private long lastFrame = -1;
+    private long accumulator = 0;
+    private boolean gameOverReported = false;
+    private long inputNanos = -1; // When the oldest key press not yet on screen arrived
+    private int pendingWidth = -1; // Size to lay out at the next pulse, -1 when unchanged
+    private int pendingHeight;
+    private ScheduledFuture<?> idleFrames; // Set while idle
+    private VersusClient versus; // Set in a versus match
+
+    GameLoop(GameSimulation simulation, GameRenderer renderer, DebugOverlay overlay, Runnable onGameOver,
+             StallWatchdog watchdog, int idleFps) {
+        if (idleFps < 1) {
+            throw new IllegalArgumentException("idle frame rate must be at least 1, got " + idleFps);
+        }
+        this.simulation = simulation;
+        this.renderer = renderer;
+        this.overlay = overlay;
+        this.onGameOver = onGameOver;
+        this.watchdog = watchdog;
+        this.idleFrameNanos = TimeUnit.SECONDS.toNanos(1) / idleFps;
+    }
+
+    // A key press was applied; its latency runs until the frame that draws it has been rendered.
+    void inputArrived(long nanos) {
+        if (inputNanos < 0) {
+            inputNanos = nanos;
+        }
+        wake();
+    }
+
+    // Width and height arrive as separate property changes; only the last size before a pulse is laid out.
+    void resize(int width, int height) {
+        pendingWidth = width;
+        pendingHeight = height;
+        wake();
+    }
+
+    // Play the ticks a versus server confirms rather than the ones the clock counts, or the clock's again with null.
+    void follow(VersusClient versus) {
+        this.versus = versus;
+    }
+
+    // What to draw over the final board: a decided match ends both games, even the one still falling.
+    private String ending(boolean gameOver) {
+        if (versus != null && versus.isDecided()) {
+            return versus.isWon() ? "YOU WIN" : "YOU LOSE";
+        }
+        return gameOver ? "GAME OVER" : null;
+    }
+
+    boolean isIdle() {
+        return idleFrames != null;
+    }
+
+    // Back to a frame every pulse; the next frame goes idle again if nothing changed.
+    void wake() {
+        if (idleFrames != null) {
+            idleFrames.cancel(false);
+            idleFrames = null;
+            start();
+        }
+    }
+
+    // Stop the timer for good, with the application.
+    void shutdown() {
+        idleClock.shutdownNow();
+        idleFrames = null;
+        stop();
+    }
+
+    private void idle() {
+        stop();
+        idleFrames = idleClock.scheduleAtFixedRate(() -> Platform.runLater(idleFrame),
+                idleFrameNanos, idleFrameNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void handle(long now) {
+        long workStart = System.nanoTime();
+        watchdog.beat();
+        long elapsed = lastFrame < 0 ? 0 : Math.min(now - lastFrame, MAX_FRAME_NANOS);
+        lastFrame = now;
+
+        if (versus != null) {
+            versus.advance(simulation);
+        } else {
+            accumulator += elapsed;
+            while (accumulator >= TICK_NANOS) {
+                simulation.update();
+                accumulator -= TICK_NANOS;
+            }
+        }
+
+        if (pendingWidth >= 0) {
+            renderer.resize(pendingWidth, pendingHeight);
+            overlay.resize(pendingWidth, pendingHeight);
+            pendingWidth = -1;
+        }
+
+        boolean gameOver = simulation.getEngine().isGameOver();
+        String ending = ending(gameOver);
+        renderer.setPaused(simulation.isPaused());
+        renderer.setEnding(ending);
+        renderer.showCascade(simulation.getCascade(), simulation.getCascadeLink());
+        renderer.animate(elapsed);
+        renderer.render();
+        long frameEnd = System.nanoTime();
+        overlay.record(elapsed, frameEnd - workStart, isIdle());
+        if (inputNanos >= 0) {
+            overlay.recordInputLatency(frameEnd - inputNanos);
+            inputNanos = -1;
+        }
+
+        if (gameOver && !gameOverReported) {
+            onGameOver.run();
+        }
+        gameOverReported = gameOver;
+
+        // A replay can unpause itself, so idle frames check this too
+        boolean idle = simulation.isPaused() || ending != null;
+        if (idle && idleFrames == null && !idleClock.isShutdown()) {
+            idle();
+        } else if (!idle) {
+            wake();
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+
+import java.util.List;
+import java.util.Objects;
+
+// Draws the engine state onto stacked canvases: background, falling code, animated border, settled board,
+// active piece and HUD. Each layer remembers what it last showed and is only repainted when that
+// changes; on the board layer only the cells that changed (and the neighbours their sprites reach) are.
+// While the simulation shows a cascade the board layer draws the cascade's own board, link by link.
+// GameLoop calls animate() and render() once per pulse; every render() is reported as a FrameEvent.
+// A resize lays the layers out at once but keeps the size-dependent assets (gem sprites, HUD text, border
+// gradients) drawn scaled until the size has settled; animate() then rebuilds them a piece per frame.
+// While paused or over the falling code holds still. The border and the pulsing PAUSE text are then all
+// that changes, and both sit on layers no larger than themselves, so a frame recomposites little.
+final class GameRenderer {
+
+    // Smallest cell the window is laid out with. Every frame compares the whole board with what was
+    // drawn, so this also keeps that scan as small as a board that fits on the screen.
+    static final int MIN_CELL_SIZE = 4;
+
+    static final String[] LAYER_NAMES = {"background", "rain", "border", "board", "piece", "hud"};
+    private static final int BACKGROUND = 0;
+    private static final int RAIN = 1;
+    private static final int BORDER = 2;
+    private static final int BOARD = 3;
+    private static final int PIECE = 4;
+    private static final int HUD = 5;
+
+    private final GameEngine engine;
+    private final int rows;
+    private final int cols;
+    private final GemSprites gemSprites = new GemSprites();
+    private final HudText hudText = new HudText();
+    private final CodeRain codeRain = new CodeRain();
+
+    private final Canvas backgroundLayer = new Canvas();
+    private final Canvas rainLayer = new Canvas();
+    private final Canvas borderLayer = new Canvas();
+    private final Canvas boardLayer = new Canvas();
+    private final Canvas pieceLayer = new Canvas();
+    private final Canvas hudLayer = new Canvas();
+    private final Canvas pauseLayer = new Canvas(); // Part of the HUD, fitted to the PAUSE text
+
+    private int width;
+    private int height;
+    private double cellSize;
+    private double boardOffsetX;
+    private double boardOffsetY;
+    private double scoreFontSize;
+
+    private static final long ASSET_SETTLE_NANOS = 150_000_000L; // Quiet time after a resize before assets are rebuilt
+
+    // Layout the assets were built for; the HUD text is drawn scaled by cellSize / assetSize until they catch up
+    private double assetSize = -1;
+    private int assetWidth;
+    private int assetHeight;
+    private long assetsStaleNanos = -1; // Time since the last resize, -1 while the assets match the layout
+
+    private static final LinearGradient BACKGROUND_GRADIENT = new LinearGradient( // Dark green background
+            0, 0, 0, 1,
+            true, CycleMethod.NO_CYCLE,
+            new Stop(0, Color.BLACK),
+            new Stop(1, Color.DARKGREEN)
+    );
+
+    // Class fields for the border colors
+    private static final Color INITIAL_BORDER_COLOR_1 = Color.hsb(120, 0.9, 0.5); // Darker neon green
+    private static final Color INITIAL_BORDER_COLOR_2 = Color.hsb(210, 0.7, 0.2); // Darker grayish-green
+    private static final Color[] BORDER_COLORS = {
+            Color.DARKGREEN,  // Dark Green
+            Color.DARKBLUE,   // Dark Blue
+            Color.DARKCYAN    // Dark Cyan
+    };
+    private static final int BORDER_TRANSITION_STEPS = 50; // Steps from one border colour to the next
+
+    // Every step of the colour cycle, built once per size so the animation itself allocates nothing
+    private LinearGradient initialBorderGradient;
+    private final LinearGradient[] borderGradients = new LinearGradient[BORDER_COLORS.length * BORDER_TRANSITION_STEPS];
+    private int borderStep = -1; // Index into borderGradients, -1 for the initial colours
+
+    private static final long BORDER_STEP_NANOS = 50_000_000L; // Border colours advance every 50 ms
+    private static final long PULSE_STEP_NANOS = 100_000_000L; // PAUSE text pulse is redrawn every 100 ms
+
+    private boolean paused = false;
+    private String ending = null; // GAME OVER or a versus result, null while the game goes on
+    private long animationNanos = 0; // Animation clock, advanced by the game loop
+    private long borderNanos = 0;
+    private long pulseNanos = 0;
+
+    // What each layer currently shows
+    private boolean backgroundValid = false;
+    private boolean borderValid = false;
+    private boolean boardValid = false;
+    private final char[][] drawnCells;
+    private final boolean[][] cellsToRepaint;
+    private boolean pieceValid = false;
+    private boolean drawnStonePresent;
+    private int drawnStoneRow;
+    private int drawnStoneCol;
+    private int drawnLandingRow;
+    private final char[] drawnStoneColors = new char[3];
+    private final char[] drawnNextColors = new char[3];
+    private boolean hudValid = false;
+    private int drawnScore;
+    private int drawnLevel;
+    private boolean pulseValid = false;
+    private HudText.Entry drawnPauseText; // null when the pause layer is empty
+    private double drawnPauseX;
+    private double drawnPauseY;
+    private double drawnPauseScale;
+    private final long[] repaints = new long[LAYER_NAMES.length];
+    private final FrameEvent frameEvent = new FrameEvent(); // Reused like the engine's events
+
+    // A cascade is replayed on a board of its own, the engine's board is already past it
+    private final GemBoard cascadeBoard;
+    private Cascade shownCascade;
+    private int shownLink;
+
+    GameRenderer(GameEngine engine) {
+        this.engine = engine;
+        this.rows = engine.getRows();
+        this.cols = engine.getCols();
+        this.drawnCells = new char[rows][cols];
+        this.cellsToRepaint = new boolean[rows][cols];
+        this.cascadeBoard = new CharBoard(rows, cols);
+    }
+
+    List<Node> layers() {
+        return List.of(backgroundLayer, rainLayer, borderLayer, boardLayer, pieceLayer, hudLayer, pauseLayer);
+    }
+
+    void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        for (Node layer : layers()) {
+            if (layer == borderLayer || layer == pauseLayer) {
+                continue; // Fitted to what they show
+            }
+            ((Canvas) layer).setWidth(width);
+            ((Canvas) layer).setHeight(height);
+        }
+        calculateSizes();
+        layoutBorderLayer();
+        codeRain.resize(width, height);
+        invalidateLayers();
+    }
+
+    // The border layer only covers the border, so that its 20 steps a second don't make JavaFX recomposite
+    // the whole window. It is placed on whole pixels and drawn in window coordinates, so every pixel
+    // lands where it did on a full-window layer.
+    private void layoutBorderLayer() {
+        double borderWidth = cellSize * 0.3;
+        double left = Math.floor(boardOffsetX - borderWidth);
+        double top = Math.floor(boardOffsetY - borderWidth);
+        borderLayer.relocate(left, top);
+        borderLayer.setWidth(Math.ceil(boardOffsetX + cols * cellSize + borderWidth) - left);
+        borderLayer.setHeight(Math.ceil(boardOffsetY + rows * cellSize + borderWidth) - top);
+        borderLayer.getGraphicsContext2D().setTransform(1, 0, 0, 1, -left, -top); // Draw in window coordinates
+    }
+
+    // Redraw every layer at the current sizes. The border and board layers only clear what they paint,
+    // so whatever the previous layout or the scaled sprites left on them is cleared here.
+    private void invalidateLayers() {
+        borderLayer.getGraphicsContext2D().clearRect(0, 0, width, height);
+        boardLayer.getGraphicsContext2D().clearRect(0, 0, width, height);
+        backgroundValid = false;
+        borderValid = false;
+        boardValid = false;
+        pieceValid = false;
+        hudValid = false;
+        drawnPauseText = null;
+    }
+
+    void setPaused(boolean paused) {
+        if (this.paused != paused) {
+            this.paused = paused;
+            hudValid = false;
+        }
+    }
+
+    // The end of the game is drawn in the scene, over the final board, until the next game starts.
+    void setEnding(String ending) {
+        if (!Objects.equals(this.ending, ending)) {
+            this.ending = ending;
+            hudValid = false;
+        }
+    }
+
+    // Show a cascade up to the link whose matches are marked, or the engine's board again with null.
+    void showCascade(Cascade cascade, int link) {
+        if (cascade != null && !cascade.isRecorded()) {
+            cascade = null; // Nothing to replay, the engine's board is all there is
+        }
+        if (cascade != shownCascade) {
+            shownCascade = cascade;
+            shownLink = 0;
+            if (cascade != null) {
+                cascade.reset(cascadeBoard);
+            }
+        }
+        while (cascade != null && shownLink < link) {
+            cascade.advance(cascadeBoard, shownLink++);
+        }
+    }
+
+    private char cellAt(int row, int col) {
+        return shownCascade != null ? cascadeBoard.get(row, col) : engine.getCell(row, col);
+    }
+
+    void setRainDensity(double density) {
+        codeRain.setDensity(density);
+    }
+
+    // Advance the border colours and the PAUSE pulse by the time elapsed since the previous frame,
+    // and rebuild stale assets once the window has stopped changing size.
+    void animate(long elapsedNanos) {
+        animationNanos += elapsedNanos;
+        if (!paused && ending == null) {
+            codeRain.advance(elapsedNanos); // Holds still while nothing is played, it covers the whole window
+        }
+
+        if (assetsStaleNanos >= 0) {
+            assetsStaleNanos += elapsedNanos;
+            if (assetsStaleNanos >= ASSET_SETTLE_NANOS && gemSprites.buildNext()) {
+                buildAssets();
+                invalidateLayers();
+            }
+        }
+
+        borderNanos += elapsedNanos;
+        while (borderNanos >= BORDER_STEP_NANOS) {
+            borderNanos -= BORDER_STEP_NANOS;
+            updateBorderColors();
+        }
+
+        if (paused) {
+            pulseNanos += elapsedNanos;
+            if (pulseNanos >= PULSE_STEP_NANOS) {
+                pulseNanos %= PULSE_STEP_NANOS;
+                pulseValid = false;
+            }
+        }
+    }
+
+    // Repaint whatever changed since the last call.
+    void render() {
+        FrameEvent event = frameEvent;
+        event.begin();
+        boolean background = !backgroundValid;
+        if (background) {
+            drawBackground(backgroundLayer.getGraphicsContext2D());
+            backgroundValid = true;
+            repaints[BACKGROUND]++;
+        }
+        int rainColumns = codeRain.draw(rainLayer.getGraphicsContext2D());
+        if (rainColumns > 0) {
+            repaints[RAIN]++;
+        }
+        boolean border = !borderValid;
+        if (border) {
+            drawBorder(borderLayer.getGraphicsContext2D());
+            borderValid = true;
+            repaints[BORDER]++;
+        }
+        int boardCells = drawBoard(boardLayer.getGraphicsContext2D());
+        if (boardCells > 0) {
+            repaints[BOARD]++;
+        }
+        boolean piece = drawPieces(pieceLayer.getGraphicsContext2D());
+        if (piece) {
+            repaints[PIECE]++;
+        }
+        boolean hud = !hudValid || drawnScore != engine.getScore() || drawnLevel != engine.getLevel();
+        if (hud) {
+            drawHud(hudLayer.getGraphicsContext2D());
+            hudValid = true;
+            repaints[HUD]++;
+        } else if (!pulseValid && paused && drawPause(pauseLayer.getGraphicsContext2D())) {
+            hud = true;
+            repaints[HUD]++;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.background = background;
+            event.rainColumns = rainColumns;
+            event.border = border;
+            event.boardCells = boardCells;
+            event.piece = piece;
+            event.hud = hud;
+            event.occupancy = engine.countStones();
+            event.commit();
+        }
+    }
+
+    // How often each layer has been repainted, indexed like LAYER_NAMES
+    long getRepaints(int layer) {
+        return repaints[layer];
+    }
+
+    // Whole pixels, so that sprites and grid lines stay sharp; a cell of the board plus a border around it
+    static int cellSize(int rows, int cols, int width, int height) {
+        return Math.min(width / (cols + 2), height / (rows + 2));
+    }
+
+    // Whether a rows x cols board can be drawn in a window of this size
+    static boolean fits(int rows, int cols, int width, int height) {
+        return cellSize(rows, cols, width, height) >= MIN_CELL_SIZE;
+    }
+
+    private void calculateSizes() {
+        cellSize = cellSize(rows, cols, width, height);
+        boardOffsetX = (width - cols * cellSize) / 2;
+        boardOffsetY = (height - rows * cellSize) / 2;
+        gemSprites.setDrawSize(cellSize);
+        if (assetSize < 0) {
+            gemSprites.rebuild(cellSize); // Nothing to scale on the first layout
+            buildAssets();
+        } else if (cellSize != assetSize || width != assetWidth || height != assetHeight) {
+            assetsStaleNanos = 0; // A drag keeps restarting the wait
+        } else {
+            assetsStaleNanos = -1; // Back at the size the assets were built for
+        }
+    }
+
+    // Called once the sprites match cellSize
+    private void buildAssets() {
+        assetSize = cellSize;
+        assetWidth = width;
+        assetHeight = height;
+        scoreFontSize = cellSize * 0.8; // Adjust score font size based on cell size
+        buildBorderGradients();
+        assetsStaleNanos = -1;
+    }
+
+    private void buildBorderGradients() {
+        initialBorderGradient = borderGradient(INITIAL_BORDER_COLOR_1, INITIAL_BORDER_COLOR_2);
+        for (int colorIndex = 0; colorIndex < BORDER_COLORS.length; colorIndex++) {
+            // Get the next color
+            Color nextColor = BORDER_COLORS[colorIndex];
+            for (int step = 0; step < BORDER_TRANSITION_STEPS; step++) {
+                double transitionProgress = (double) step / BORDER_TRANSITION_STEPS;
+
+                // Interpolate between current color and next color
+                Color borderColor1 = interpolateColor(BORDER_COLORS[(colorIndex + 1) % BORDER_COLORS.length], nextColor, transitionProgress);
+                Color borderColor2 = interpolateColor(nextColor, BORDER_COLORS[(colorIndex + 2) % BORDER_COLORS.length], transitionProgress);
+                borderGradients[colorIndex * BORDER_TRANSITION_STEPS + step] = borderGradient(borderColor1, borderColor2);
+            }
+        }
+    }
+
+    private LinearGradient borderGradient(Color borderColor1, Color borderColor2) {
+        return new LinearGradient(
+                0, 0, width, height,
+                true,
+                CycleMethod.REFLECT,
+                new Stop(0, borderColor1),
+                new Stop(1, borderColor2)
+        );
+    }
+
+    private void updateBorderColors() {
+        borderStep = (borderStep + 1) % borderGradients.length; // Move on, to the next color after a full transition
+        borderValid = false;
+    }
+
+    // Interpolation method to blend colors
+    private Color interpolateColor(Color colorA, Color colorB, double progress) {
+        double red = colorA.getRed() + (colorB.getRed() - colorA.getRed()) * progress;
+        double green = colorA.getGreen() + (colorB.getGreen() - colorA.getGreen()) * progress;
+        double blue = colorA.getBlue() + (colorB.getBlue() - colorA.getBlue()) * progress;
+        return Color.color(red, green, blue);
+    }
+
+    private void drawBackground(GraphicsContext gc) {
+        gc.setFill(BACKGROUND_GRADIENT);
+        gc.fillRect(0, 0, width, height);
+    }
+
+    private void drawBorder(GraphicsContext gc) {
+        double borderWidth = cellSize * 0.3;
+        gc.clearRect(boardOffsetX - borderWidth, boardOffsetY - borderWidth,
+                cols * cellSize + 2 * borderWidth, rows * cellSize + 2 * borderWidth);
+
+        // Set the fill to the border gradient of this step
+        gc.setFill(borderStep < 0 ? initialBorderGradient : borderGradients[borderStep]);
+
+        // Draw the top border
+        gc.fillRect(boardOffsetX - borderWidth, boardOffsetY - borderWidth,
+                cols * cellSize + 2 * borderWidth, borderWidth);
+
+        // Draw the bottom border
+        gc.fillRect(boardOffsetX - borderWidth, boardOffsetY + rows * cellSize,
+                cols * cellSize + 2 * borderWidth, borderWidth);
+
+        // Draw the left border
+        gc.fillRect(boardOffsetX - borderWidth, boardOffsetY,
+                borderWidth, rows * cellSize);
+
+        // Draw the right border
+        gc.fillRect(boardOffsetX + cols * cellSize, boardOffsetY,
+                borderWidth, rows * cellSize);
+    }
+
+    // Returns the number of cells repainted.
+    private int drawBoard(GraphicsContext gc) {
+        if (!boardValid) {
+            double overhang = gemSprites.overhang();
+            gc.clearRect(boardOffsetX - overhang, boardOffsetY - overhang,
+                    cols * cellSize + 2 * overhang, rows * cellSize + 2 * overhang);
+            gc.setFill(Color.DARKSEAGREEN);
+            gc.fillRect(boardOffsetX, boardOffsetY, cols * cellSize, rows * cellSize);
+
+            // Draw existing stones on the board
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    char color = cellAt(row, col);
+                    drawnCells[row][col] = color;
+                    if (color != ' ') {
+                        gemSprites.draw(gc, color, boardOffsetX + col * cellSize, boardOffsetY + row * cellSize);
+                    }
+                }
+            }
+
+            // Draw grid lines with a contrasting color
+            gc.setStroke(Color.BLACK);
+            gc.setLineWidth(2);
+            for (int row = 0; row <= rows; row++) {
+                double y = boardOffsetY + row * cellSize;
+                gc.strokeLine(boardOffsetX, y, boardOffsetX + cols * cellSize, y);
+            }
+            for (int col = 0; col <= cols; col++) {
+                double x = boardOffsetX + col * cellSize;
+                gc.strokeLine(x, boardOffsetY, x, boardOffsetY + rows * cellSize);
+            }
+            boardValid = true;
+            return rows * cols;
+        }
+
+        // A changed gem also changes the glow and shadow it casts into its neighbours
+        boolean anyChanged = false;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                char color = cellAt(row, col);
+                if (drawnCells[row][col] != color) {
+                    drawnCells[row][col] = color;
+                    for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                        for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                            cellsToRepaint[r][c] = true;
+                        }
+                    }
+                    anyChanged = true;
+                }
+            }
+        }
+        if (!anyChanged) {
+            return 0;
+        }
+        int repainted = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (cellsToRepaint[row][col]) {
+                    cellsToRepaint[row][col] = false;
+                    repaintCell(gc, row, col);
+                    repainted++;
+                }
+            }
+        }
+        return repainted;
+    }
+
+    // Redraw one cell rectangle exactly as the full pass would: background, the sprites that reach into it
+    // in the same row-major order, then the grid lines. Edge cells also own the overhang outside the board.
+    void repaintCell(GraphicsContext gc, int row, int col) {
+        double x = boardOffsetX + col * cellSize;
+        double y = boardOffsetY + row * cellSize;
+        double overhang = gemSprites.overhang();
+        double left = col == 0 ? x - overhang : x;
+        double top = row == 0 ? y - overhang : y;
+        double right = col == cols - 1 ? x + cellSize + overhang : x + cellSize;
+        double bottom = row == rows - 1 ? y + cellSize + overhang : y + cellSize;
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(left, top, right - left, bottom - top);
+        gc.clip();
+
+        gc.clearRect(left, top, right - left, bottom - top);
+        gc.setFill(Color.DARKSEAGREEN);
+        gc.fillRect(x, y, cellSize, cellSize);
+
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                char color = drawnCells[r][c];
+                if (color != ' ') {
+                    gemSprites.draw(gc, color, boardOffsetX + c * cellSize, boardOffsetY + r * cellSize);
+                }
+            }
+        }
+
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(2);
+        gc.strokeLine(boardOffsetX, y, boardOffsetX + cols * cellSize, y);
+        gc.strokeLine(boardOffsetX, y + cellSize, boardOffsetX + cols * cellSize, y + cellSize);
+        gc.strokeLine(x, boardOffsetY, x, boardOffsetY + rows * cellSize);
+        gc.strokeLine(x + cellSize, boardOffsetY, x + cellSize, boardOffsetY + rows * cellSize);
+        gc.restore();
+    }
+
+    // Returns whether anything was repainted.
+    private boolean drawPieces(GraphicsContext gc) {
+        TripleStone fallingStone = engine.getFallingStone();
+        TripleStone nextStone = engine.getNextStone();
+        if (pieceValid && !piecesChanged(fallingStone, nextStone)) {
+            return false;
+        }
+
+        double overhang = gemSprites.overhang();
+        if (!pieceValid) {
+            gc.clearRect(0, 0, width, height);
+        } else {
+            if (drawnStonePresent) {
+                // The stone and its landing preview below it
+                gc.clearRect(boardOffsetX + drawnStoneCol * cellSize - overhang, boardOffsetY + drawnStoneRow * cellSize - overhang,
+                        cellSize + 2 * overhang, (Math.max(drawnLandingRow, drawnStoneRow) - drawnStoneRow + 3) * cellSize + 2 * overhang);
+            }
+            gc.clearRect(previewOffsetX() - overhang, boardOffsetY - overhang, cellSize + 2 * overhang, 3 * cellSize + 2 * overhang);
+        }
+
+        // Draw falling stone if present
+        drawnStonePresent = fallingStone != null;
+        if (fallingStone != null) {
+            drawnStoneRow = fallingStone.row;
+            drawnStoneCol = fallingStone.col;
+            drawnLandingRow = engine.getLandingRow();
+            System.arraycopy(fallingStone.colors, 0, drawnStoneColors, 0, drawnStoneColors.length);
+            fallingStone.drawGhost(gc, gemSprites, boardOffsetX, boardOffsetY, cellSize, drawnLandingRow);
+            fallingStone.draw(gc, gemSprites, boardOffsetX, boardOffsetY, cellSize);
+        }
+
+        // Draw next stone preview if present
+        if (nextStone != null) {
+            System.arraycopy(nextStone.colors, 0, drawnNextColors, 0, drawnNextColors.length);
+            nextStone.drawPreview(gc, gemSprites, previewOffsetX(), boardOffsetY, cellSize);
+        }
+        pieceValid = true;
+        return true;
+    }
+
+    private boolean piecesChanged(TripleStone fallingStone, TripleStone nextStone) {
+        if ((fallingStone != null) != drawnStonePresent) {
+            return true;
+        }
+        if (fallingStone != null && (fallingStone.row != drawnStoneRow || fallingStone.col != drawnStoneCol
+                || engine.getLandingRow() != drawnLandingRow || !sameColors(fallingStone.colors, drawnStoneColors))) {
+            return true;
+        }
+        return nextStone != null && !sameColors(nextStone.colors, drawnNextColors);
+    }
+
+    private static boolean sameColors(char[] colors, char[] drawn) {
+        for (int i = 0; i < drawn.length; i++) {
+            if (colors[i] != drawn[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double previewOffsetX() {
+        return boardOffsetX + cols * cellSize + cellSize;
+    }
+
+    private void drawHud(GraphicsContext gc) {
+        gc.clearRect(0, 0, width, height);
+        drawnScore = engine.getScore();
+        drawnLevel = engine.getLevel();
+        double scale = cellSize / assetSize; // Text keeps its font size until the assets are rebuilt
+
+        // Pre-rendered score text with its cached metrics
+        HudText.Entry scoreText = hudText.get("Score: " + drawnScore, scoreFontSize, HudText.Style.GLOW);
+
+        // Calculate position for score text
+        double scoreX = boardOffsetX - scoreText.width * scale - (cellSize * 0.5);
+        double scoreY = boardOffsetY + (cellSize * 0.5) + (scoreText.height * scale / 2);
+        scoreText.draw(gc, scoreX, scoreY, scale);
+
+        // Draw Level text under the Score text
+        HudText.Entry levelText = hudText.get("Level: " + drawnLevel, scoreFontSize, HudText.Style.GLOW);
+
+        // Position level text directly below score text
+        double levelTextY = scoreY + scoreText.height * scale + 5; // Adjust the "+ 5" for spacing
+        levelText.draw(gc, scoreX, levelTextY, scale);
+
+        if (!paused && drawnPauseText != null) {
+            pauseLayer.getGraphicsContext2D().clearRect(0, 0, width, height);
+            drawnPauseText = null;
+        }
+
+        if (ending != null) {
+            double endingFontSize = Math.rint(Math.max(20, assetSize * 0.5 * 4));
+            HudText.Entry endingText = hudText.get(ending, endingFontSize, HudText.Style.PAUSE);
+            HudText.Entry restartText = hudText.get("ENTER: new game", scoreFontSize, HudText.Style.GLOW);
+            double endingY = (height - endingText.height * scale) / 2;
+            endingText.draw(gc, (width - endingText.width * scale) / 2, endingY, scale);
+            restartText.draw(gc, (width - restartText.width * scale) / 2, endingY + endingText.height * scale, scale);
+            return;
+        }
+
+        // Draw "PAUSE" text with gradient and shadow if the game is paused
+        if (paused) {
+            drawPause(pauseLayer.getGraphicsContext2D());
+        }
+    }
+
+    // Draw the PAUSE text at its current pulse size onto the pause layer, fitted to it.
+    // Returns whether anything was repainted; the size only changes on some of the pulse steps.
+    private boolean drawPause(GraphicsContext gc) {
+        pulseValid = true;
+        double scale = cellSize / assetSize;
+
+        // Calculate a font size based on the cell size and pulsate it; whole sizes keep the cache small
+        double pulsatingEffect = Math.sin(animationNanos / 1_000_000L * 0.005);
+        double pauseFontSize = Math.rint(Math.max(20, assetSize * 0.5 * 4 + pulsatingEffect * 5));
+
+        // Center the PAUSE text based on updated sizes
+        HudText.Entry pauseText = hudText.get("PAUSE", pauseFontSize, HudText.Style.PAUSE);
+        double pauseX = (width - pauseText.width * scale) / 2;
+        double pauseY = (height - pauseText.height * scale) / 2;
+        if (pauseText == drawnPauseText && pauseX == drawnPauseX && pauseY == drawnPauseY && scale == drawnPauseScale) {
+            return false;
+        }
+        gc.clearRect(0, 0, width, height);
+        pauseText.fit(pauseLayer, pauseX, pauseY, scale);
+        pauseText.draw(gc, pauseX, pauseY, scale);
+
+        drawnPauseText = pauseText;
+        drawnPauseX = pauseX;
+        drawnPauseY = pauseY;
+        drawnPauseScale = scale;
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// The balancing knobs of the game: how many points each speed-up takes, how many speed-ups there are,
+// how much each one shortens the fall and which gem colors the stones are drawn from.
+public record GameRules(int scoreIncreaseThreshold, int maxSpeedUpCount, long fallDurationDecrementMillis,
+                        String palette) {
+
+    public static final String ALL_COLORS = "RGBYP";
+
+    public static final GameRules DEFAULT = new GameRules(
+            GameEngine.SCORE_INCREASE_THRESHOLD,
+            GameEngine.MAX_SPEED_UP_COUNT,
+            GameEngine.FALL_DURATION_DECREMENT_MILLIS,
+            ALL_COLORS);
+
+    public GameRules {
+        if (scoreIncreaseThreshold <= 0) {
+            throw new IllegalArgumentException("Score increase threshold must be positive: " + scoreIncreaseThreshold);
+        }
+        if (maxSpeedUpCount < 0 || fallDurationDecrementMillis < 0) {
+            throw new IllegalArgumentException("Speed-ups must not be negative");
+        }
+        if (GameEngine.FALL_DURATION_MILLIS - maxSpeedUpCount * fallDurationDecrementMillis < GameSimulation.TICK_MILLIS) {
+            throw new IllegalArgumentException("The fall would get faster than one tick");
+        }
+        if (palette.isEmpty() || !palette.chars().allMatch(c -> GameEngine.isColor((char) c))
+                || palette.chars().distinct().count() != palette.length()) {
+            throw new IllegalArgumentException("Palette must be distinct colors out of " + ALL_COLORS + ": " + palette);
+        }
+    }
+
+    public GameRules withScoreIncreaseThreshold(int scoreIncreaseThreshold) {
+        return new GameRules(scoreIncreaseThreshold, maxSpeedUpCount, fallDurationDecrementMillis, palette);
+    }
+
+    public GameRules withMaxSpeedUpCount(int maxSpeedUpCount) {
+        return new GameRules(scoreIncreaseThreshold, maxSpeedUpCount, fallDurationDecrementMillis, palette);
+    }
+
+    public GameRules withFallDurationDecrementMillis(long fallDurationDecrementMillis) {
+        return new GameRules(scoreIncreaseThreshold, maxSpeedUpCount, fallDurationDecrementMillis, palette);
+    }
+
+    public GameRules withPalette(String palette) {
+        return new GameRules(scoreIncreaseThreshold, maxSpeedUpCount, fallDurationDecrementMillis, palette);
+    }
+}
@@ -0,0 +1,345 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.CompletableFuture;
+
+// Fixed-timestep driver for the engine. Every update() advances the game by TICK_MILLIS and turns the
+// held keys and elapsed ticks into engine calls: gravity, fast fall and auto-shift. A press acts at once
+// (first shift, first fast-fall step, rotation, hard drop); holding LEFT or RIGHT repeats the shift after
+// the auto-shift delay and then at the repeat rate, both set in ticks with setAutoShift(). A landing's
+// cascade is resolved by the engine at once; the simulation then holds the game while it is shown, one
+// link per CLEAR_DELAY_TICKS, so the next stone never falls onto a board the player hasn't seen yet.
+// Headless, so the same timing runs in the UI loop and in simulations.
+// With a Policy such as the AutoPlayer set, every new stone is planned (in the background if the
+// policy supports it) and then steered like a player would: shiftUp, slide to the chosen column and
+// fast fall.
+// Key presses can be recorded with a ReplayRecorder and fed back by a ReplayPlayer; the seed plus the
+// tick of every press and release is enough to play the same game again.
+// A StateStreamWriter gets the state after every tick that advanced the game, for spectators or recordings.
+public class GameSimulation {
+
+    public static final int TICK_MILLIS = 10;
+    static final int FAST_FALL_TICKS = 10; // 0.1 s between fast-fall steps
+    static final int MOVE_TICKS = 10; // 100 ms between bot steps
+    public static final int SHIFT_DELAY_TICKS = 15; // 150 ms from the first shift to the first repeat
+    public static final int SHIFT_REPEAT_TICKS = 10; // 100 ms between repeated shifts
+    static final int CLEAR_DELAY_TICKS = 100; // How long each link's matches stay magenta
+
+    public enum Key {
+        LEFT,
+        RIGHT,
+        DOWN,
+        SPACE,
+        ENTER,
+        UP // Hard drop; last so that the replay codes of the other keys stay as they were
+    }
+
+    private final GameEngine engine;
+
+    private boolean isMovingLeft = false;
+    private boolean isMovingRight = false;
+    private boolean isFastFalling = false;
+    private boolean isHardDropping = false; // UP is held; the next stone waits for it to be pressed again
+    private boolean isPaused = false;
+
+    private long tick = 0;
+    private int fallTicks = 0;
+    private int fastFallTicks = 0;
+    private int moveTicks = 0;
+    private int shiftDelayTicks = SHIFT_DELAY_TICKS;
+    private int shiftRepeatTicks = SHIFT_REPEAT_TICKS;
+    private int shiftTicks = 0; // Since LEFT or RIGHT went down
+    private Cascade cascade; // Being shown, null when the game runs
+    private Cascade shownCascade; // Last cascade taken from the engine
+    private int cascadeLink;
+    private int cascadeTicks;
+
+    private Policy policy;
+    private boolean waitForPlan; // Plan on the simulation thread, for headless runs that outpace real time
+    private int plannedLandings = -1; // Stones landed when the current plan was made; stone objects are recycled
+    private CompletableFuture<AutoPlayer.Move> plan;
+    private int rotationsLeft;
+
+    private ReplayRecorder recorder;
+    private ReplayPlayer replayPlayer;
+    private StateStreamWriter stateWriter;
+
+    public GameSimulation(GameEngine engine) {
+        this.engine = engine;
+    }
+
+    public void press(Key key) {
+        if (recorder != null) {
+            recorder.record(tick, key, true);
+        }
+        switch (key) {
+            // The keyboard repeats presses of a held key; only the first one shifts and starts the delay
+            case LEFT -> {
+                if (!isMovingLeft) {
+                    isMovingLeft = true;
+                    startShift(GameEngine.Input.LEFT);
+                }
+            }
+            case RIGHT -> {
+                if (!isMovingRight) {
+                    isMovingRight = true;
+                    startShift(GameEngine.Input.RIGHT);
+                }
+            }
+            case DOWN -> {
+                if (!isPaused && !isFastFalling) {
+                    isFastFalling = true;
+                    fastFallTicks = 0;
+                    stepNow(GameEngine.Input.DOWN);
+                }
+            }
+            case SPACE -> {
+                if (!isPaused) {
+                    engine.step(GameEngine.Input.ROTATE); // Shift stones up on SPACE press
+                }
+            }
+            case ENTER -> togglePause();
+            case UP -> {
+                if (!isHardDropping) {
+                    isHardDropping = true;
+                    if (!isPaused) {
+                        stepNow(GameEngine.Input.DROP);
+                    }
+                }
+            }
+        }
+    }
+
+    private void startShift(GameEngine.Input input) {
+        shiftTicks = 0;
+        if (!isPaused) {
+            stepNow(input);
+        }
+    }
+
+    // Apply an input between updates; a landing's cascade is taken over before the next tick can spawn a stone.
+    private void stepNow(GameEngine.Input input) {
+        boolean wasOver = engine.isGameOver();
+        engine.step(input);
+        showNewCascade();
+        if (stateWriter != null && !wasOver && engine.isGameOver()) {
+            // No update() streams a game that ended between ticks; the next tick would have shown this
+            stateWriter.record(tick + 1, engine);
+        }
+    }
+
+    // Auto-shift timing in ticks: delay from the first shift to the first repeat, then the repeat interval.
+    public void setAutoShift(int delayTicks, int repeatTicks) {
+        if (delayTicks < 1 || repeatTicks < 1 || delayTicks > Short.MAX_VALUE || repeatTicks > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Auto-shift delay and repeat must be 1 to " + Short.MAX_VALUE + " ticks");
+        }
+        this.shiftDelayTicks = delayTicks;
+        this.shiftRepeatTicks = repeatTicks;
+    }
+
+    public int getShiftDelayTicks() {
+        return shiftDelayTicks;
+    }
+
+    public int getShiftRepeatTicks() {
+        return shiftRepeatTicks;
+    }
+
+    public void release(Key key) {
+        if (recorder != null) {
+            recorder.record(tick, key, false);
+        }
+        switch (key) {
+            case LEFT -> isMovingLeft = false;
+            case RIGHT -> isMovingRight = false;
+            case DOWN -> isFastFalling = false; // Спрете бързото падане
+            case UP -> isHardDropping = false;
+            default -> {
+            }
+        }
+    }
+
+    // Let the bot play, or hand the game back to the keys with null.
+    public void setAutoPlayer(AutoPlayer autoPlayer) {
+        setPolicy(autoPlayer, false);
+    }
+
+    public void setPolicy(Policy policy, boolean waitForPlan) {
+        this.policy = policy;
+        this.waitForPlan = waitForPlan;
+        plannedLandings = -1;
+        plan = null;
+    }
+
+    public boolean isAutoPlaying() {
+        return policy != null;
+    }
+
+    // Record every key press and release from now on, or stop with null.
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Stream the game's state from now on, starting with the current one, or stop with null.
+    public void setStateWriter(StateStreamWriter stateWriter) {
+        this.stateWriter = stateWriter;
+        if (stateWriter != null) {
+            stateWriter.record(tick, engine);
+        }
+    }
+
+    // Take the keys from a replay instead, or stop with null.
+    public void setReplayPlayer(ReplayPlayer replayPlayer) {
+        this.replayPlayer = replayPlayer;
+    }
+
+    // A new game on the same engine, from tick 0 like a new simulation. A policy keeps playing;
+    // the recorder and the replay player are the caller's to replace.
+    public void restart(long seed) {
+        engine.restart(seed);
+        isMovingLeft = false;
+        isMovingRight = false;
+        isFastFalling = false;
+        isHardDropping = false;
+        isPaused = false;
+        tick = 0;
+        fallTicks = 0;
+        fastFallTicks = 0;
+        moveTicks = 0;
+        shiftTicks = 0;
+        cascade = null;
+        shownCascade = null;
+        plannedLandings = -1;
+        plan = null;
+    }
+
+    private void togglePause() {
+        isPaused = !isPaused;
+        if (isPaused) {
+            isFastFalling = false; // Когато е на пауза, бързото падане също спира
+        }
+    }
+
+    // Advance the game by one fixed tick.
+    public void update() {
+        if (replayPlayer != null) {
+            replayPlayer.feed(this);
+        }
+        if (isPaused || engine.isGameOver()) {
+            return;
+        }
+        tick++;
+        advance();
+        if (stateWriter != null) {
+            stateWriter.record(tick, engine);
+        }
+    }
+
+    // The tick's timing: the cascade being shown holds the game, otherwise gravity, fast fall, auto-shift and the bot.
+    private void advance() {
+        if (cascade != null) {
+            if (--cascadeTicks == 0) {
+                cascadeTicks = CLEAR_DELAY_TICKS;
+                if (++cascadeLink == cascade.links()) {
+                    cascade = null;
+                }
+            }
+            return;
+        }
+
+        if (++fallTicks >= engine.getFallDurationMillis() / TICK_MILLIS) {
+            fallTicks = 0;
+            engine.tick();
+        }
+
+        if (isFastFalling && ++fastFallTicks >= FAST_FALL_TICKS) {
+            fastFallTicks = 0;
+            engine.step(GameEngine.Input.DOWN);
+        }
+
+        if ((isMovingLeft || isMovingRight) && ++shiftTicks >= shiftDelayTicks
+                && (shiftTicks - shiftDelayTicks) % shiftRepeatTicks == 0) {
+            if (isMovingLeft) {
+                engine.step(GameEngine.Input.LEFT);
+            }
+            if (isMovingRight) {
+                engine.step(GameEngine.Input.RIGHT);
+            }
+        }
+
+        if (policy != null && ++moveTicks >= MOVE_TICKS) {
+            moveTicks = 0;
+            steer();
+        }
+
+        showNewCascade();
+    }
+
+    private void showNewCascade() {
+        if (engine.getCascade() != shownCascade) {
+            shownCascade = engine.getCascade();
+            if (shownCascade != null && !engine.isGameOver()) {
+                cascade = shownCascade;
+                cascadeLink = 0;
+                cascadeTicks = CLEAR_DELAY_TICKS;
+            }
+        }
+    }
+
+    // One bot input per move step: plan a new stone, rotate, slide, then drop.
+    private void steer() {
+        TripleStone stone = engine.getFallingStone();
+        if (stone == null) {
+            return;
+        }
+        if (engine.getStonesLanded() != plannedLandings) {
+            plannedLandings = engine.getStonesLanded();
+            plan = waitForPlan
+                    ? CompletableFuture.completedFuture(policy.chooseMove(engine))
+                    : policy.planAsync(engine);
+            rotationsLeft = -1;
+            return;
+        }
+        if (!plan.isDone()) {
+            return; // Gravity keeps running while the bot thinks
+        }
+        AutoPlayer.Move move = plan.join();
+        if (move == null) {
+            return;
+        }
+        if (rotationsLeft < 0) {
+            rotationsLeft = move.rotations();
+        }
+        if (rotationsLeft > 0) {
+            rotationsLeft--;
+            engine.step(GameEngine.Input.ROTATE);
+        } else if (stone.col < move.column()) {
+            engine.step(GameEngine.Input.RIGHT);
+        } else if (stone.col > move.column()) {
+            engine.step(GameEngine.Input.LEFT);
+        } else {
+            engine.step(GameEngine.Input.DOWN);
+        }
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    // The cascade being shown and the link whose matches are marked, or null while the game runs
+    Cascade getCascade() {
+        return cascade;
+    }
+
+    int getCascadeLink() {
+        return cascadeLink;
+    }
+
+    // Number of updates that actually advanced the game
+    public long getTick() {
+        return tick;
+    }
+}
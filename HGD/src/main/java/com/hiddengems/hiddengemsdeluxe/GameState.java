@@ -0,0 +1,6 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// What a state stream shows at a tick: the board, the falling stone (null between a landing and the
+// next stone), the preview, score and level. Boards of consecutive states share their unchanged rows.
+public record GameState(long tick, BoardSnapshot board, Piece falling, Piece next, int score, int level) {
+}
@@ -0,0 +1,51 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// Storage and board-wide rules of the playing field. ' ' is an empty cell, 'R', 'G', 'B', 'Y', 'P'
+// are gems and 'M' is a gem that is part of a match and waits to be cleared.
+public interface GemBoard {
+
+    int BIT_BOARD_MAX_CELLS = 1 << 14; // BitBoard's per-column masks grow with cols * cells
+
+    // The fastest backend for a board of this size: a BitBoard for game-sized boards, a CharBoard
+    // splitting its passes over the common fork-join pool for very large ones.
+    static GemBoard forSize(int rows, int cols) {
+        return rows * cols <= BIT_BOARD_MAX_CELLS ? new BitBoard(rows, cols) : new CharBoard(rows, cols);
+    }
+
+    int rows();
+
+    int cols();
+
+    char get(int row, int col);
+
+    void set(int row, int col, char gem);
+
+    default boolean isEmpty(int row, int col) {
+        return get(row, col) == ' ';
+    }
+
+    // Row of the highest stone in the column, rows() if it is empty. Kept by every change, so reading it is O(1).
+    int top(int col);
+
+    // Empty every cell.
+    void clear();
+
+    // Mark every run of three equal gems (horizontal, vertical and both diagonals) as 'M'.
+    boolean markMatches();
+
+    boolean hasMarked();
+
+    // Empty all 'M' cells.
+    void clearMarked();
+
+    // Let every stone fall to the lowest free cell of its column.
+    void collapse();
+
+    // True if some column holds at least the given number of consecutive gems.
+    boolean hasFullColumn(int stones);
+
+    // Zobrist hash of the cells (see Zobrist), kept up to date by every change.
+    long hash();
+
+    GemBoard copy();
+}
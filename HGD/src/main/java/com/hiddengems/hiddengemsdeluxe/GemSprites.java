@@ -0,0 +1,153 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+
+// One pre-rendered image per gem char. The gradient, glow and shadow are painted once per cell size
+// and every gem on the board, the falling stone and the preview is then a single drawImage.
+// After a resize the old sprites are drawn scaled to the new cells until buildNext() has painted the
+// set for the new size, one gem per call, so no single frame pays for the whole set.
+final class GemSprites {
+
+    private static final char[] GEMS = {'R', 'G', 'B', 'Y', 'P', 'M'};
+    private static final double SHADOW_OFFSET = 3;
+    private static final double GLOW_WIDTH = 2.5;
+    private static final double PADDING = 3; // Room for the glow stroke around the diamond
+    static final double OVERHANG = PADDING + SHADOW_OFFSET; // How far a sprite can reach outside its cell
+
+    private WritableImage[] sprites = new WritableImage[128]; // Indexed by gem char
+    private WritableImage[] pending = new WritableImage[128]; // The set buildNext() is painting
+    private double cellSize = -1; // Size the sprites were painted for
+    private double drawSize = -1; // Size of the cells they are drawn into
+    private int pendingGems = 0; // Gems of the pending set painted so far
+    private Canvas scratch;
+    private final SnapshotParameters params = new SnapshotParameters();
+
+    GemSprites() {
+        params.setFill(Color.TRANSPARENT);
+    }
+
+    // Re-render the whole set for a new cell size at once; does nothing if the size did not change.
+    void rebuild(double size) {
+        setDrawSize(size);
+        while (!buildNext()) {
+            // One gem per call
+        }
+    }
+
+    // Draw into cells of this size from now on, scaling the current sprites until the new set is built.
+    void setDrawSize(double size) {
+        if (size != drawSize && size > 0) {
+            drawSize = size;
+            pendingGems = 0; // A set half painted for another size is of no use
+        }
+    }
+
+    // Paint the next gem for the draw size; returns true once the sprites match it.
+    boolean buildNext() {
+        if (drawSize == cellSize) {
+            return true;
+        }
+        if (pendingGems == 0) {
+            double imageSize = Math.ceil(drawSize + 2 * PADDING + SHADOW_OFFSET);
+            scratch = new Canvas(imageSize, imageSize);
+        }
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        char gem = GEMS[pendingGems++];
+        gc.clearRect(0, 0, scratch.getWidth(), scratch.getHeight());
+        paintGem(gc, getColor(gem), PADDING, PADDING, drawSize);
+        pending[gem] = scratch.snapshot(params, null);
+        if (pendingGems < GEMS.length) {
+            return false;
+        }
+        WritableImage[] current = sprites;
+        sprites = pending;
+        pending = current;
+        cellSize = drawSize;
+        pendingGems = 0;
+        scratch = null;
+        return true;
+    }
+
+    // How far a sprite drawn right now can reach outside its cell
+    double overhang() {
+        return drawSize > cellSize ? OVERHANG * drawSize / cellSize : OVERHANG;
+    }
+
+    void draw(GraphicsContext gc, char gem, double x, double y) {
+        WritableImage sprite = gem < sprites.length ? sprites[gem] : null;
+        if (sprite == null) {
+            return;
+        }
+        if (drawSize == cellSize) {
+            gc.drawImage(sprite, x - PADDING, y - PADDING);
+        } else {
+            double scale = drawSize / cellSize; // Stale sprites while the new size is being painted
+            gc.drawImage(sprite, x - PADDING * scale, y - PADDING * scale,
+                    sprite.getWidth() * scale, sprite.getHeight() * scale);
+        }
+    }
+
+    private static void paintGem(GraphicsContext gc, Color baseColor, double x, double y, double size) {
+        // Matrix-inspired gradient with green tones: Keep the base color but add a digital look with the gradient
+        RadialGradient gradient = new RadialGradient(
+                0, 0, x + size / 2, y + size / 2, size / 2,
+                false, CycleMethod.NO_CYCLE,
+                new Stop(0, baseColor.brighter().saturate()),   // Bright center for a glow effect
+                new Stop(0.5, baseColor),                       // Mid-tone base color
+                new Stop(1, baseColor.darker().darker())        // Darker edge for contrast
+        );
+
+        // Define points for the diamond shape, centered on (x, y) with size as the dimension
+        double halfSize = size / 2;
+        double[] xPoints = {x + halfSize, x + size, x + halfSize, x};  // Right, bottom, left, top
+        double[] yPoints = {y, y + halfSize, y + size, y + halfSize};
+
+        // Fill the diamond shape with the gradient
+        gc.setFill(gradient);
+        gc.fillPolygon(xPoints, yPoints, 4);
+
+        // Apply a neon glow effect using a softer green outline based on baseColor
+        gc.setGlobalAlpha(0.4); // Reduced opacity for the glow effect
+        gc.setStroke(baseColor.brighter().brighter()); // Brighter version of baseColor for glow
+        gc.setLineWidth(GLOW_WIDTH);
+        gc.strokePolygon(xPoints, yPoints, 4); // Outline the diamond shape
+
+        // Darker shadow effect for a deeper look
+        gc.setGlobalAlpha(0.25);
+        gc.setFill(Color.BLACK); // Black shadow to create digital depth
+        double[] shadowXPoints = {x + halfSize + SHADOW_OFFSET, x + size + SHADOW_OFFSET,
+                x + halfSize + SHADOW_OFFSET, x + SHADOW_OFFSET};
+        double[] shadowYPoints = {y + SHADOW_OFFSET, y + halfSize + SHADOW_OFFSET,
+                y + size + SHADOW_OFFSET, y + halfSize + SHADOW_OFFSET};
+        gc.fillPolygon(shadowXPoints, shadowYPoints, 4); // Offset shadow for a 3D effect
+
+        // Reset alpha to full opacity
+        gc.setGlobalAlpha(1.0);
+    }
+
+    private static Color getColor(char colorChar) {
+        switch (colorChar) {
+            case 'R':
+                return Color.RED;
+            case 'G':
+                return Color.GREEN;
+            case 'B':
+                return Color.BLUE;
+            case 'Y':
+                return Color.YELLOW;
+            case 'P':
+                return Color.PURPLE;
+            case 'M': // Magenta
+                return Color.MAGENTA;
+            default:
+                return Color.BLACK;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import javafx.geometry.Bounds;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Pre-rendered HUD strings keyed by (text, font size). The glow and the PAUSE shadow are painted once
+// into an image together with the text metrics; drawing a string is then a single drawImage.
+final class HudText {
+
+    static final String FONT_FAMILY = "Courier New";
+    private static final double MARGIN = 3; // Room for the glow and the shadow around the text
+    private static final int MAX_ENTRIES = 32; // Score and level strings go stale as the game goes on
+
+    enum Style {
+        GLOW,
+        PAUSE
+    }
+
+    static final class Entry {
+        private final WritableImage image;
+        final double width;  // Layout width of the text
+        final double height; // Layout height of the text
+        private final double ascent;
+
+        private Entry(WritableImage image, double width, double height, double ascent) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.ascent = ascent;
+        }
+
+        // Draw with the text baseline starting at (x, y), the same anchor fillText uses. A scale other
+        // than 1 stretches the image, for text rendered at a font size the window has since left.
+        void draw(GraphicsContext gc, double x, double y, double scale) {
+            if (scale == 1) {
+                gc.drawImage(image, x - MARGIN, y - ascent - MARGIN);
+            } else {
+                gc.drawImage(image, x - MARGIN * scale, y - (ascent + MARGIN) * scale,
+                        image.getWidth() * scale, image.getHeight() * scale);
+            }
+        }
+
+        // Shrink a layer to what draw() paints with the same arguments, on whole pixels; the layer keeps
+        // taking window coordinates.
+        void fit(Canvas layer, double x, double y, double scale) {
+            double left = Math.floor(x - MARGIN * scale);
+            double top = Math.floor(y - (ascent + MARGIN) * scale);
+            layer.relocate(left, top);
+            layer.setWidth(Math.ceil(x + (image.getWidth() - MARGIN) * scale) - left);
+            layer.setHeight(Math.ceil(y + (image.getHeight() - ascent - MARGIN) * scale) - top);
+            layer.getGraphicsContext2D().setTransform(1, 0, 0, 1, -left, -top);
+        }
+    }
+
+    // Mutable so that a lookup can reuse one probe; only copies go into the map
+    private static final class Key {
+        private String text;
+        private double fontSize;
+        private Style style;
+
+        private Key set(String text, double fontSize, Style style) {
+            this.text = text;
+            this.fontSize = fontSize;
+            this.style = style;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && text.equals(key.text) && fontSize == key.fontSize && style == key.style;
+        }
+
+        @Override
+        public int hashCode() {
+            return (text.hashCode() * 31 + Double.hashCode(fontSize)) * 31 + style.hashCode();
+        }
+    }
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final Key probe = new Key();
+    private final Text measure = new Text();
+    private final SnapshotParameters params = new SnapshotParameters();
+
+    HudText() {
+        params.setFill(Color.TRANSPARENT);
+    }
+
+    Entry get(String text, double fontSize, Style style) {
+        Entry entry = entries.get(probe.set(text, fontSize, style)); // A hit allocates nothing
+        if (entry == null) {
+            entry = render(text, fontSize, style);
+            entries.put(new Key().set(text, fontSize, style), entry);
+        }
+        return entry;
+    }
+
+    private Entry render(String text, double fontSize, Style style) {
+        Font font = new Font(FONT_FAMILY, fontSize);
+        measure.setFont(font);
+        measure.setText(text);
+        Bounds bounds = measure.getLayoutBounds();
+        double ascent = -bounds.getMinY(); // Text is measured from its baseline
+
+        Canvas scratch = new Canvas(Math.ceil(bounds.getWidth() + 2 * MARGIN), Math.ceil(bounds.getHeight() + 2 * MARGIN));
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.setFont(font);
+        if (style == Style.GLOW) {
+            paintGlow(gc, text, MARGIN, MARGIN + ascent);
+        } else {
+            paintPause(gc, text, MARGIN, MARGIN + ascent);
+        }
+        return new Entry(scratch.snapshot(params, null), bounds.getWidth(), bounds.getHeight(), ascent);
+    }
+
+    private static void paintGlow(GraphicsContext gc, String text, double x, double y) {
+        // Draw glowing effect for the text
+        gc.setFill(Color.web("#145A32"));
+        gc.fillText(text, x - 1.5, y - 1.5);
+        gc.fillText(text, x + 1.5, y - 1.5);
+        gc.fillText(text, x - 1.5, y + 1.5);
+        gc.fillText(text, x + 1.5, y + 1.5);
+
+        gc.setFill(Color.web("#1E8449"));
+        gc.fillText(text, x - 0.8, y - 0.8);
+        gc.fillText(text, x + 0.8, y - 0.8);
+        gc.fillText(text, x - 0.8, y + 0.8);
+        gc.fillText(text, x + 0.8, y + 0.8);
+
+        gc.setFill(Color.web("#2ECC71"));
+        gc.fillText(text, x - 0.3, y - 0.3);
+        gc.fillText(text, x + 0.3, y - 0.3);
+        gc.fillText(text, x - 0.3, y + 0.3);
+        gc.fillText(text, x + 0.3, y + 0.3);
+
+        // Main text
+        gc.setFill(Color.LIMEGREEN);
+        gc.fillText(text, x, y);
+    }
+
+    private static void paintPause(GraphicsContext gc, String text, double x, double y) {
+        // Darker Matrix-style green gradient for the PAUSE text
+        LinearGradient pauseGradient = new LinearGradient(
+                0, 0, 1, 0,
+                true, CycleMethod.NO_CYCLE,
+                new Stop(0, Color.rgb(0, 30, 0)),
+                new Stop(1, Color.rgb(0, 40, 40))
+        );
+
+        gc.setGlobalAlpha(0.7);
+        gc.setFill(Color.rgb(0, 40, 0));
+        gc.fillText(text, x + 2, y + 2);
+
+        gc.setGlobalAlpha(1.0);
+        gc.setFill(pauseGradient);
+        gc.fillText(text, x, y);
+    }
+}
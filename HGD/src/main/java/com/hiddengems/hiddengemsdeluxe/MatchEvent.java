@@ -0,0 +1,20 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("hiddengems.Match")
+@Label("Match Pass")
+@Category("Hidden Gems")
+@Description("One pass of the cascade resolver: marking the matches and checking for a full column")
+final class MatchEvent extends jdk.jfr.Event {
+
+    @Label("Matches Found")
+    boolean matchesFound;
+
+    @Label("Occupancy")
+    @Description("Gems on the board")
+    int occupancy;
+}
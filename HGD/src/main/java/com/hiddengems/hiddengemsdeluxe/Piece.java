@@ -0,0 +1,68 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// A falling stone as a value: its top cell's position and its three colours from top to bottom.
+// Moving or rotating gives a new Piece, so pieces can be kept, compared and handed between threads
+// while the engine's own TripleStones go on being reused.
+public record Piece(int row, int col, char top, char middle, char bottom) {
+
+    public static final int LENGTH = GameEngine.STONE_LENGTH;
+
+    public char color(int i) {
+        switch (i) {
+            case 0:
+                return top;
+            case 1:
+                return middle;
+            case 2:
+                return bottom;
+            default:
+                throw new IndexOutOfBoundsException("Piece cell " + i);
+        }
+    }
+
+    // A fresh array, top to bottom
+    public char[] colors() {
+        return new char[]{top, middle, bottom};
+    }
+
+    public Piece moved(int rows, int cols) {
+        return new Piece(row + rows, col + cols, top, middle, bottom);
+    }
+
+    // The same rotation as TripleStone.shiftUp: every colour moves up one cell, the top one to the bottom
+    public Piece rotated() {
+        return new Piece(row, col, middle, bottom, top);
+    }
+
+    // Whether every cell of the piece is on the board and empty
+    public boolean fits(BoardSnapshot board) {
+        if (col < 0 || col >= board.cols() || row < 0 || row + LENGTH > board.rows()) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            if (!board.isEmpty(row + i, col)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Row the piece would rest on if it fell straight down from here
+    public int landingRow(BoardSnapshot board) {
+        int landing = row;
+        while (landing + LENGTH < board.rows() && board.isEmpty(landing + LENGTH, col)) {
+            landing++;
+        }
+        return landing;
+    }
+
+    // The board with the piece dropped straight down and placed; matches are left to the caller
+    public BoardSnapshot droppedOn(BoardSnapshot board) {
+        int landing = landingRow(board);
+        BoardSnapshot.Editor editor = board.edit();
+        for (int i = 0; i < LENGTH; i++) {
+            editor.set(landing + i, col, color(i));
+        }
+        return editor.snapshot();
+    }
+}
@@ -0,0 +1,16 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.CompletableFuture;
+
+// Decides where each new stone goes when the keyboard doesn't. GameSimulation steers the stone there
+// one input per move step, the way a player would.
+public interface Policy {
+
+    // Returns null if no stone is falling.
+    AutoPlayer.Move chooseMove(GameEngine engine);
+
+    // Plan without holding up the caller; a policy that answers at once simply does that.
+    default CompletableFuture<AutoPlayer.Move> planAsync(GameEngine engine) {
+        return CompletableFuture.completedFuture(chooseMove(engine));
+    }
+}
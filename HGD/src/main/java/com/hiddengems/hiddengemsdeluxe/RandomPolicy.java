@@ -0,0 +1,21 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.Random;
+
+// A random column and rotation for every stone; the baseline for balancing runs.
+public final class RandomPolicy implements Policy {
+
+    private final Random random;
+
+    public RandomPolicy(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public AutoPlayer.Move chooseMove(GameEngine engine) {
+        if (engine.getFallingStone() == null) {
+            return null;
+        }
+        return new AutoPlayer.Move(random.nextInt(engine.getCols()), random.nextInt(3));
+    }
+}
@@ -0,0 +1,26 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.nio.ByteBuffer;
+
+// One recorded game: the engine seed, the key log and what the game came to when recording stopped.
+// On disk a replay is a fixed header followed by the key log:
+//   int magic 'HGDR', byte version, int log length (-1 until the recording is finished),
+//   long ticks, int score, long seed, short rows, short cols, short shift delay, short shift repeat
+// and every key event is a varint tick delta plus one byte, key ordinal << 1 | released.
+// Ticks count GameSimulation updates that advanced the game, so pauses leave no gaps in the log.
+// Replays are self-delimiting, so an archive is just replays written one after another.
+public record Replay(long seed, int rows, int cols, int shiftDelayTicks, int shiftRepeatTicks, long ticks, int score,
+                     ByteBuffer inputs) {
+
+    static final int MAGIC = 0x48474452; // "HGDR"
+    static final byte VERSION = 5; // 2: the game holds while a cascade is shown, 3: board size, 4: immediate shift and auto-repeat, 5: a held UP drops once
+    static final int LENGTH_OFFSET = 5; // Length, ticks and score are written last, in one go
+    static final int HEADER_BYTES = 4 + 1 + 4 + 8 + 4 + 8 + 2 + 2 + 2 + 2;
+    static final int INCOMPLETE = -1;
+
+    static final GameSimulation.Key[] KEYS = GameSimulation.Key.values();
+
+    static byte encode(GameSimulation.Key key, boolean pressed) {
+        return (byte) (key.ordinal() << 1 | (pressed ? 0 : 1));
+    }
+}
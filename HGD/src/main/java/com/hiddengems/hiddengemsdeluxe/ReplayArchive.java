@@ -0,0 +1,72 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A file of replays, read through a memory mapping. Opening only walks the headers; every replay's key
+// log is a slice of the mapping, so nothing is copied and playing thousands of replays costs no I/O
+// beyond the page cache. A replay whose recording never finished ends the archive.
+public final class ReplayArchive {
+
+    private final List<Replay> replays;
+    private final long end;
+
+    private ReplayArchive(List<Replay> replays, long end) {
+        this.replays = replays;
+        this.end = end;
+    }
+
+    public static ReplayArchive open(Path path) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2 GB, split the archive");
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after the channel closes
+        }
+
+        List<Replay> replays = new ArrayList<>();
+        int position = 0;
+        while (map.limit() - position >= Replay.HEADER_BYTES) {
+            if (map.getInt(position) != Replay.MAGIC) {
+                throw new IOException(path + ": no replay at offset " + position);
+            }
+            if (map.get(position + 4) != Replay.VERSION) {
+                throw new IOException(path + ": replay at offset " + position + " was recorded by version "
+                        + map.get(position + 4) + " of the game and would not play the same");
+            }
+            int length = map.getInt(position + Replay.LENGTH_OFFSET);
+            int start = position + Replay.HEADER_BYTES;
+            if (length == Replay.INCOMPLETE || length > map.limit() - start) {
+                break; // The game was still being recorded or the write was cut short
+            }
+            long ticks = map.getLong(position + Replay.LENGTH_OFFSET + 4);
+            int score = map.getInt(position + Replay.LENGTH_OFFSET + 12);
+            long seed = map.getLong(position + Replay.LENGTH_OFFSET + 16);
+            int rows = map.getShort(position + Replay.LENGTH_OFFSET + 24);
+            int cols = map.getShort(position + Replay.LENGTH_OFFSET + 26);
+            int shiftDelayTicks = map.getShort(position + Replay.LENGTH_OFFSET + 28);
+            int shiftRepeatTicks = map.getShort(position + Replay.LENGTH_OFFSET + 30);
+            ByteBuffer inputs = map.slice(start, length).asReadOnlyBuffer();
+            replays.add(new Replay(seed, rows, cols, shiftDelayTicks, shiftRepeatTicks, ticks, score, inputs));
+            position = start + length;
+        }
+        return new ReplayArchive(Collections.unmodifiableList(replays), position);
+    }
+
+    public List<Replay> replays() {
+        return replays;
+    }
+
+    // Offset just past the last complete replay, where the next recording goes
+    long end() {
+        return end;
+    }
+}
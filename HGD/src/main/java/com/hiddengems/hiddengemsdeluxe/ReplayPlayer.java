@@ -0,0 +1,114 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Feeds a replay's key log into a simulation in place of the keyboard. In the UI the game loop's
+// updates pace it at 1x; play() runs a replay headless as fast as the engine goes, and main() uses
+// that to check whole archives: every replay has to end on the tick and score it was recorded with.
+public final class ReplayPlayer {
+
+    private static final long NO_MORE_INPUTS = Long.MAX_VALUE;
+
+    private final Replay replay;
+    private final ByteBuffer inputs;
+    private long nextTick = 0; // Tick of the next key event
+    private boolean stopped = false; // Paused the game at the end of the replay
+
+    public ReplayPlayer(Replay replay) {
+        this.replay = replay;
+        this.inputs = replay.inputs().duplicate(); // Own position, so replays can be played concurrently
+        readNextTick();
+    }
+
+    public Replay getReplay() {
+        return replay;
+    }
+
+    // Every input has been fed and the game is where the recording stopped.
+    public boolean isDone(long tick) {
+        return nextTick == NO_MORE_INPUTS && tick >= replay.ticks();
+    }
+
+    // Called by the simulation before every update: press and release the keys due at this tick.
+    // Pauses the game once when the replay is done, so it stops where the recording did.
+    void feed(GameSimulation simulation) {
+        long tick = simulation.getTick();
+        if (nextTick < tick) {
+            throw new IllegalStateException("Replay input for tick " + nextTick + " missed at tick " + tick);
+        }
+        while (nextTick == tick) {
+            int code = inputs.get();
+            GameSimulation.Key key = Replay.KEYS[code >> 1];
+            if ((code & 1) == 0) {
+                simulation.press(key);
+            } else {
+                simulation.release(key);
+            }
+            readNextTick();
+        }
+        if (!stopped && isDone(tick)) {
+            stopped = true;
+            if (!simulation.isPaused() && !simulation.getEngine().isGameOver()) {
+                simulation.press(GameSimulation.Key.ENTER);
+            }
+        }
+    }
+
+    private void readNextTick() {
+        nextTick = inputs.hasRemaining() ? nextTick + Varints.get(inputs) : NO_MORE_INPUTS;
+    }
+
+    // Re-simulate the replay without rendering and return the simulation where it ended.
+    public static GameSimulation play(Replay replay) {
+        GameEngine engine = new GameEngine(replay.seed(), replay.rows(), replay.cols(), GameRules.DEFAULT);
+        GameSimulation simulation = new GameSimulation(engine);
+        simulation.setAutoShift(replay.shiftDelayTicks(), replay.shiftRepeatTicks());
+        ReplayPlayer player = new ReplayPlayer(replay);
+        simulation.setReplayPlayer(player);
+        while (!player.isDone(simulation.getTick()) && !engine.isGameOver()) {
+            long tick = simulation.getTick();
+            simulation.update();
+            if (simulation.getTick() == tick && !player.isDone(tick)) {
+                throw new IllegalStateException("Replay stays paused at tick " + tick);
+            }
+        }
+        return simulation;
+    }
+
+    // Whether the replay still ends on its recorded tick and score.
+    public static boolean matches(Replay replay) {
+        GameSimulation simulation = play(replay);
+        return simulation.getTick() == replay.ticks() && simulation.getEngine().getScore() == replay.score();
+    }
+
+    // Regression check: replay every game in the given archives and report the ones that diverge.
+    public static void main(String[] args) throws IOException {
+        int total = 0;
+        int failed = 0;
+        long startNanos = System.nanoTime();
+        for (String arg : args) {
+            List<Replay> replays = ReplayArchive.open(Path.of(arg)).replays();
+            List<Integer> mismatches = IntStream.range(0, replays.size())
+                    .parallel()
+                    .filter(i -> !matches(replays.get(i)))
+                    .boxed()
+                    .toList();
+            for (int i : mismatches) {
+                Replay replay = replays.get(i);
+                System.out.printf("%s #%d (seed %d): diverged from score %d at tick %d%n",
+                        arg, i, replay.seed(), replay.score(), replay.ticks());
+            }
+            total += replays.size();
+            failed += mismatches.size();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%d replays, %d diverged, %.0f replays/s%n", total, failed, total / seconds);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends one game to a replay archive. Key events go into a direct buffer that is written to the
+// file channel when it fills up; close() writes what is left and then fills in the header's length,
+// ticks and score, which makes the replay complete.
+public final class ReplayRecorder implements Closeable {
+
+    private static final int BUFFER_BYTES = 8192;
+    private static final int MAX_EVENT_BYTES = Varints.MAX_BYTES + 1;
+
+    private final FileChannel channel;
+    private final long start; // Offset of this replay's header
+    private final GameSimulation simulation;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long lastTick = 0;
+    private boolean closed = false;
+
+    private ReplayRecorder(FileChannel channel, long start, GameSimulation simulation) {
+        this.channel = channel;
+        this.start = start;
+        this.simulation = simulation;
+    }
+
+    // Record the simulation's game from its current state, which should be the start, into the archive.
+    // An unfinished replay left at the end of the archive, e.g. by a crash, is dropped.
+    public static ReplayRecorder append(Path archive, GameSimulation simulation) throws IOException {
+        long end = Files.exists(archive) ? ReplayArchive.open(archive).end() : 0;
+        FileChannel channel = FileChannel.open(archive,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(end);
+        channel.position(end);
+
+        ReplayRecorder recorder = new ReplayRecorder(channel, end, simulation);
+        recorder.buffer.putInt(Replay.MAGIC)
+                .put(Replay.VERSION)
+                .putInt(Replay.INCOMPLETE)
+                .putLong(0)
+                .putInt(0)
+                .putLong(simulation.getEngine().getSeed())
+                .putShort((short) simulation.getEngine().getRows())
+                .putShort((short) simulation.getEngine().getCols())
+                .putShort((short) simulation.getShiftDelayTicks())
+                .putShort((short) simulation.getShiftRepeatTicks());
+        return recorder;
+    }
+
+    void record(long tick, GameSimulation.Key key, boolean pressed) {
+        if (closed) {
+            return;
+        }
+        if (buffer.remaining() < MAX_EVENT_BYTES) {
+            flush();
+        }
+        Varints.put(buffer, tick - lastTick);
+        buffer.put(Replay.encode(key, pressed));
+        lastTick = tick;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    // Finish the replay at the simulation's current tick and score.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            long length = channel.position() - start - Replay.HEADER_BYTES;
+            ByteBuffer header = ByteBuffer.allocate(16)
+                    .putInt((int) length)
+                    .putLong(simulation.getTick())
+                    .putInt(simulation.getEngine().getScore())
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, start + Replay.LENGTH_OFFSET + header.position());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("hiddengems.Stall")
+@Label("FX Thread Stall")
+@Category("Hidden Gems")
+@Description("A gap between two game loop pulses longer than the StallWatchdog threshold")
+final class StallEvent extends jdk.jfr.Event {
+
+    @Label("Stall")
+    @Timespan(Timespan.NANOSECONDS)
+    long stallNanos;
+
+    @Label("Stack Sample")
+    @Description("FX Application Thread stack taken once the threshold was passed")
+    String stack;
+}
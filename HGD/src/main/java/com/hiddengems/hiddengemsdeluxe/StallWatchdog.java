@@ -0,0 +1,101 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.TimeUnit;
+
+// Catches freezes of the JavaFX Application Thread. The game loop beats once per pulse; a daemon thread
+// checks the beat a few times per threshold and, once a pulse is overdue by more than the threshold,
+// samples the FX thread's stack and logs it. When the pulses come back the whole stall is logged
+// and committed as a StallEvent with the sample.
+final class StallWatchdog {
+
+    static final long DEFAULT_THRESHOLD_MILLIS = 200;
+    private static final int CHECKS_PER_THRESHOLD = 4;
+    private static final int MAX_FRAMES = 24; // Stack depth kept in the log and in the event
+
+    private final long thresholdNanos;
+    private final Thread watchdog;
+
+    private volatile Thread watched; // The thread that beats, set by the first beat
+    private volatile long lastBeat;
+
+    // Only touched by the watchdog thread
+    private long stalledBeat = -1; // Beat the current stall started after, -1 when running
+    private String stack;
+
+    StallWatchdog(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.watchdog = new Thread(this::watch, "fx-stall-watchdog");
+        watchdog.setDaemon(true);
+    }
+
+    void start() {
+        watchdog.start();
+    }
+
+    void stop() {
+        watchdog.interrupt();
+    }
+
+    // Called from the watched thread on every pulse.
+    void beat() {
+        if (watched == null) {
+            watched = Thread.currentThread();
+        }
+        lastBeat = System.nanoTime();
+    }
+
+    private void watch() {
+        long checkMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / CHECKS_PER_THRESHOLD);
+        try {
+            while (true) {
+                Thread.sleep(checkMillis);
+                check(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // Stopped with the application
+        }
+    }
+
+    private void check(long now) {
+        Thread thread = watched;
+        if (thread == null) {
+            return; // No pulse yet
+        }
+        long beat = lastBeat;
+        if (stalledBeat >= 0) {
+            if (beat != stalledBeat) {
+                recovered(beat - stalledBeat);
+            }
+            return;
+        }
+        if (now - beat > thresholdNanos) {
+            stalledBeat = beat;
+            stack = format(thread.getStackTrace());
+            System.err.println("FX thread stalled for over " + TimeUnit.NANOSECONDS.toMillis(thresholdNanos)
+                    + " ms, stack sample:\n" + stack);
+        }
+    }
+
+    private void recovered(long stallNanos) {
+        System.err.println("FX thread resumed after " + TimeUnit.NANOSECONDS.toMillis(stallNanos) + " ms");
+        StallEvent event = new StallEvent();
+        if (event.shouldCommit()) {
+            event.stallNanos = stallNanos;
+            event.stack = stack;
+            event.commit();
+        }
+        stalledBeat = -1;
+        stack = null;
+    }
+
+    private static String format(StackTraceElement[] frames) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(frames.length, MAX_FRAMES); i++) {
+            text.append("\tat ").append(frames[i]).append('\n');
+        }
+        if (frames.length > MAX_FRAMES) {
+            text.append("\t... ").append(frames.length - MAX_FRAMES).append(" more\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// A game's visible state as a compact binary stream, for spectators and recordings: what is on the
+// board, the falling and the next stone, score and level at every tick that changed any of them.
+// Where a replay needs the engine to play the game again, a state stream can be shown as it is, from
+// any keyframe on.
+//   header: int magic 'HGDS', byte version, short rows, short cols
+//   frames: varint body length, then the body: a type byte and
+//     KEYFRAME varint tick, varint score, varint level, byte 1 and varint row, varint col, varint colors
+//              if a stone is falling (0 if not), varint next colors, then the board in runs
+//     DELTA    varint ticks since the previous frame, varint flags, then per flag, in flag order:
+//              PIECE_MOVED varint row, varint col; PIECE_ROTATED byte shiftUps (1 or 2);
+//              PIECE_COLORS varint colors; NEXT varint colors; SCORE varint; LEVEL varint;
+//              CELLS the changed cells in runs
+// Cells are numbered column by column (col * rows + row), so a landed stone or a column falling in
+// after a match is one run. A keyframe's board is runs of equal cells, each a varint length << 3 | code,
+// until every cell is covered. A delta's cells are runs of changed cells, each a varint length and a
+// varint gap of unchanged cells before it, followed by the new codes two to a byte, low nibble first;
+// a length of 0 ends them. Codes are BoardSnapshot's, colors are the three codes of a stone from top
+// to bottom, top code lowest. A new stone is PIECE_MOVED with PIECE_NEW (it is the previous preview)
+// or PIECE_COLORS; PIECE_GONE means it landed. Ticks without a visible change write nothing, and the
+// length in front of every frame lets a reader skip it without decoding.
+final class StateStream {
+
+    static final int MAGIC = 0x48474453; // "HGDS"
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 4 + 1 + 2 + 2;
+    static final int DEFAULT_KEYFRAME_TICKS = 500; // 5 s of game time between keyframes
+
+    static final byte KEYFRAME = 1;
+    static final byte DELTA = 2;
+
+    static final int PIECE_MOVED = 1;
+    static final int PIECE_ROTATED = 1 << 1;
+    static final int PIECE_NEW = 1 << 2;
+    static final int PIECE_COLORS = 1 << 3;
+    static final int PIECE_GONE = 1 << 4;
+    static final int NEXT = 1 << 5;
+    static final int SCORE = 1 << 6;
+    static final int LEVEL = 1 << 7;
+    static final int CELLS = 1 << 8;
+
+    private StateStream() {
+    }
+
+    static int packColors(char top, char middle, char bottom) {
+        return BoardSnapshot.code(top) | BoardSnapshot.code(middle) << 3 | BoardSnapshot.code(bottom) << 6;
+    }
+
+    static Piece unpackPiece(int row, int col, int colors) {
+        return new Piece(row, col, BoardSnapshot.gem(colors & 7), BoardSnapshot.gem(colors >> 3 & 7),
+                BoardSnapshot.gem(colors >> 6 & 7));
+    }
+
+    // Upper bound of a frame body on a board of the given size
+    static int maxBodyBytes(int cells) {
+        return 1 + 7 * Varints.MAX_BYTES + 2 + cells * (2 * 5 + 1) + 1;
+    }
+}
@@ -0,0 +1,354 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads a state stream (see StateStream) frame by frame as it arrives: next() returns the state after
+// each frame, applying deltas to the last board through a BoardSnapshot editor, so consecutive states
+// share their unchanged rows. Every keyframe passed is indexed; on a seekable channel seek() goes to
+// the last keyframe at or before a tick, skipping unread frames by their length without decoding
+// them, and plays the deltas up to the tick from there.
+//
+//   java -cp target/classes com.hiddengems.hiddengemsdeluxe.StateStreamReader game.hgds [--at TICK]
+public final class StateStreamReader implements Closeable {
+
+    private static final int BUFFER_BYTES = 65536;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private long bufferOffset; // Stream offset of the buffer's first byte
+    private int rows;
+    private int cols;
+
+    private long[] keyframeTicks = new long[16];
+    private long[] keyframeOffsets = new long[16];
+    private int keyframes;
+
+    private GameState state; // After the last frame read, null before the first keyframe
+    private long tick; // Of the last frame passed, decoded or skipped
+
+    private StateStreamReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    public static StateStreamReader open(ReadableByteChannel channel) throws IOException {
+        StateStreamReader reader = new StateStreamReader(channel);
+        if (!reader.fill(StateStream.HEADER_BYTES)) {
+            throw new IOException("Not a state stream: shorter than its header");
+        }
+        ByteBuffer in = reader.buffer;
+        if (in.getInt() != StateStream.MAGIC) {
+            throw new IOException("Not a state stream");
+        }
+        byte version = in.get();
+        if (version != StateStream.VERSION) {
+            throw new IOException("Unsupported state stream version " + version);
+        }
+        reader.rows = in.getShort();
+        reader.cols = in.getShort();
+        return reader;
+    }
+
+    public static StateStreamReader open(Path path) throws IOException {
+        return open(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    // The state after the next frame, or null at the end of the stream (or of what has arrived of it).
+    public GameState next() throws IOException {
+        while (true) {
+            int length = frameLength();
+            if (length < 0) {
+                return null;
+            }
+            long offset = bufferOffset + buffer.position();
+            Varints.get(buffer);
+            int end = buffer.position() + length;
+            byte type = buffer.get();
+            if (type == StateStream.KEYFRAME) {
+                state = readKeyframe(offset);
+            } else if (state == null) {
+                tick += Varints.get(buffer); // A delta before any keyframe has nothing to apply to
+            } else {
+                state = readDelta();
+            }
+            buffer.position(end);
+            if (state != null) {
+                return state;
+            }
+        }
+    }
+
+    // The state at the given tick: the last keyframe at or before it plus the deltas up to it.
+    // Null if the stream has no keyframe that early.
+    public GameState seek(long target) throws IOException {
+        if (!(channel instanceof SeekableByteChannel seekable)) {
+            throw new UnsupportedOperationException("Seeking needs a seekable channel");
+        }
+        int known = lastKeyframeAtOrBefore(target);
+        if (known < 0 && keyframes > 0) {
+            return null; // The first keyframe is already later
+        }
+        if (known < 0 || known == keyframes - 1) {
+            // Index the keyframes past the last known one, skipping the frames in between
+            if (keyframes > 0) {
+                position(seekable, keyframeOffsets[keyframes - 1], keyframeTicks[keyframes - 1]);
+            }
+            while (keyframes == 0 || keyframeTicks[keyframes - 1] <= target) {
+                if (!skipFrame()) {
+                    break;
+                }
+            }
+            known = lastKeyframeAtOrBefore(target);
+            if (known < 0) {
+                return null;
+            }
+        }
+        position(seekable, keyframeOffsets[known], keyframeTicks[known]);
+        state = null;
+        GameState reached = next(); // The keyframe
+        while (true) {
+            long nextTick = peekTick();
+            if (nextTick < 0 || nextTick > target) {
+                return reached;
+            }
+            reached = next();
+        }
+    }
+
+    private void position(SeekableByteChannel seekable, long offset, long frameTick) throws IOException {
+        seekable.position(offset);
+        bufferOffset = offset;
+        buffer.clear().limit(0);
+        tick = frameTick;
+    }
+
+    // Pass one frame without decoding it, indexing it if it is a keyframe; false at the end.
+    private boolean skipFrame() throws IOException {
+        int length = frameLength();
+        if (length < 0) {
+            return false;
+        }
+        long offset = bufferOffset + buffer.position();
+        Varints.get(buffer);
+        int end = buffer.position() + length;
+        byte type = buffer.get();
+        if (type == StateStream.KEYFRAME) {
+            tick = Varints.get(buffer);
+            index(tick, offset);
+        } else {
+            tick += Varints.get(buffer);
+        }
+        buffer.position(end);
+        return true;
+    }
+
+    // Tick of the next frame without reading it, -1 at the end.
+    private long peekTick() throws IOException {
+        if (frameLength() < 0) {
+            return -1;
+        }
+        int start = buffer.position();
+        Varints.get(buffer);
+        byte type = buffer.get();
+        long value = Varints.get(buffer);
+        buffer.position(start);
+        return type == StateStream.KEYFRAME ? value : tick + value;
+    }
+
+    private GameState readKeyframe(long offset) {
+        tick = Varints.get(buffer);
+        index(tick, offset);
+        int score = (int) Varints.get(buffer);
+        int level = (int) Varints.get(buffer);
+        Piece falling = null;
+        if (buffer.get() != 0) {
+            int row = (int) Varints.get(buffer);
+            int col = (int) Varints.get(buffer);
+            falling = StateStream.unpackPiece(row, col, (int) Varints.get(buffer));
+        }
+        Piece next = StateStream.unpackPiece(0, cols / 2, (int) Varints.get(buffer));
+        BoardSnapshot.Editor board = BoardSnapshot.empty(rows, cols).edit();
+        for (int i = 0; i < rows * cols; ) {
+            long run = Varints.get(buffer);
+            char gem = BoardSnapshot.gem((int) (run & 7));
+            for (long end = i + (run >>> 3); i < end; i++) {
+                if (gem != ' ') {
+                    board.set(i % rows, i / rows, gem);
+                }
+            }
+        }
+        return new GameState(tick, board.snapshot(), falling, next, score, level);
+    }
+
+    private GameState readDelta() {
+        tick += Varints.get(buffer);
+        int flags = (int) Varints.get(buffer);
+        Piece falling = state.falling();
+        Piece next = state.next();
+        if ((flags & StateStream.PIECE_GONE) != 0) {
+            falling = null;
+        }
+        if ((flags & StateStream.PIECE_NEW) != 0) {
+            falling = next; // Placed by PIECE_MOVED below
+        }
+        if ((flags & StateStream.PIECE_MOVED) != 0) {
+            int row = (int) Varints.get(buffer);
+            int col = (int) Varints.get(buffer);
+            falling = falling == null ? new Piece(row, col, ' ', ' ', ' ') : falling.moved(row - falling.row(), col - falling.col());
+        }
+        if ((flags & StateStream.PIECE_ROTATED) != 0) {
+            for (int shiftUps = buffer.get(); shiftUps > 0; shiftUps--) {
+                falling = falling.rotated();
+            }
+        }
+        if ((flags & StateStream.PIECE_COLORS) != 0) {
+            falling = StateStream.unpackPiece(falling.row(), falling.col(), (int) Varints.get(buffer));
+        }
+        if ((flags & StateStream.NEXT) != 0) {
+            next = StateStream.unpackPiece(0, cols / 2, (int) Varints.get(buffer));
+        }
+        int score = (flags & StateStream.SCORE) != 0 ? (int) Varints.get(buffer) : state.score();
+        int level = (flags & StateStream.LEVEL) != 0 ? (int) Varints.get(buffer) : state.level();
+        BoardSnapshot board = state.board();
+        if ((flags & StateStream.CELLS) != 0) {
+            BoardSnapshot.Editor editor = board.edit();
+            int cell = 0; // After the last run
+            for (int length = (int) Varints.get(buffer); length > 0; length = (int) Varints.get(buffer)) {
+                cell += (int) Varints.get(buffer);
+                for (int i = 0; i < length; i += 2) {
+                    int codes = buffer.get() & 0xFF;
+                    editor.set((cell + i) % rows, (cell + i) / rows, BoardSnapshot.gem(codes & 0xF));
+                    if (i + 1 < length) {
+                        editor.set((cell + i + 1) % rows, (cell + i + 1) / rows, BoardSnapshot.gem(codes >> 4));
+                    }
+                }
+                cell += length;
+            }
+            board = editor.snapshot();
+        }
+        return new GameState(tick, board, falling, next, score, level);
+    }
+
+    private void index(long frameTick, long offset) {
+        if (keyframes > 0 && offset <= keyframeOffsets[keyframes - 1]) {
+            return; // Seen before
+        }
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = frameTick;
+        keyframeOffsets[keyframes++] = offset;
+    }
+
+    private int lastKeyframeAtOrBefore(long target) {
+        int low = 0;
+        int high = keyframes - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyframeTicks[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    // Body length of the next frame once all of it is in the buffer, -1 if the stream ends first.
+    // The buffer is left at the frame's start.
+    private int frameLength() throws IOException {
+        while (true) {
+            int start = buffer.position();
+            try {
+                int length = (int) Varints.get(buffer);
+                int header = buffer.position() - start;
+                buffer.position(start);
+                if (fill(header + length)) {
+                    return length;
+                }
+                return -1;
+            } catch (BufferUnderflowException e) {
+                buffer.position(start);
+                if (!fill(buffer.remaining() + 1)) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    // Make sure the buffer holds at least the given number of unread bytes; false if the stream ends first.
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        bufferOffset += buffer.position();
+        if (bytes > buffer.capacity()) {
+            buffer = ByteBuffer.allocate(Math.max(bytes, 2 * buffer.capacity())).put(buffer);
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) <= 0) {
+                break; // The end, or all a non-blocking channel has for now; next() tries again later
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Summary of a stream file, or the state at a tick with --at.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("--at"))) {
+            System.err.println("Usage: StateStreamReader FILE [--at TICK]");
+            System.exit(2);
+        }
+        try (StateStreamReader reader = open(Path.of(args[0]))) {
+            if (args.length == 3) {
+                GameState state = reader.seek(Long.parseLong(args[2]));
+                if (state == null) {
+                    System.out.println("No keyframe that early");
+                    return;
+                }
+                System.out.printf("tick %d, score %d, level %d, falling %s, next %s%n%s",
+                        state.tick(), state.score(), state.level(), state.falling(), state.next(), state.board());
+                return;
+            }
+            long frames = 0;
+            long firstTick = -1;
+            for (GameState state = reader.next(); state != null; state = reader.next()) {
+                if (firstTick < 0) {
+                    firstTick = state.tick();
+                }
+                frames++;
+            }
+            long bytes = reader.bufferOffset + reader.buffer.position();
+            long ticks = Math.max(1, reader.tick - Math.max(0, firstTick));
+            System.out.printf("%dx%d, %d frames, %d keyframes, ticks %d to %d, %d bytes: %.2f bytes per tick, %.1f per frame%n",
+                    reader.rows, reader.cols, frames, reader.keyframes, Math.max(0, firstTick), reader.tick, bytes,
+                    (double) bytes / ticks, frames == 0 ? 0.0 : (double) bytes / frames);
+        }
+    }
+}
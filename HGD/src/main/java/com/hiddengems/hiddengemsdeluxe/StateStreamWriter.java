@@ -0,0 +1,304 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Writes a game's state stream (see StateStream). record() is called after every tick; it compares
+// the engine with what was written last and frames only what changed, with a keyframe every
+// keyframeTicks. The board is only scanned when its Zobrist hash moved. Frames are put together in a
+// reused body buffer and collected in a direct buffer that goes to the channel when it fills up, so
+// recording a tick allocates nothing. The channel can be a file or anything that fans the bytes out.
+public final class StateStreamWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 8192;
+
+    private final WritableByteChannel channel;
+    private final int rows;
+    private final int cols;
+    private final int keyframeTicks;
+    private final ByteBuffer body;
+    private final ByteBuffer buffer;
+
+    // The state as last written; cells column by column
+    private final char[] cells;
+    private long boardHash;
+    private boolean piecePresent;
+    private int pieceRow;
+    private int pieceCol;
+    private final char[] pieceColors = new char[GameEngine.STONE_LENGTH];
+    private int stonesLanded;
+    private final char[] nextColors = new char[GameEngine.STONE_LENGTH];
+    private int score;
+    private int level;
+    private long lastTick;
+    private long keyframeTick = -1; // None yet
+
+    private long bytesWritten = StateStream.HEADER_BYTES;
+    private long frames;
+    private long keyframes;
+    private boolean closed = false;
+
+    private StateStreamWriter(WritableByteChannel channel, int rows, int cols, int keyframeTicks) {
+        this.channel = channel;
+        this.rows = rows;
+        this.cols = cols;
+        this.keyframeTicks = keyframeTicks;
+        this.cells = new char[rows * cols];
+        int maxBody = StateStream.maxBodyBytes(rows * cols);
+        this.body = ByteBuffer.allocate(maxBody);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, maxBody + Varints.MAX_BYTES));
+    }
+
+    // A stream of a rows x cols game with a keyframe at least every keyframeTicks ticks.
+    public static StateStreamWriter open(WritableByteChannel channel, int rows, int cols, int keyframeTicks) {
+        if (keyframeTicks < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1 tick, got " + keyframeTicks);
+        }
+        StateStreamWriter writer = new StateStreamWriter(channel, rows, cols, keyframeTicks);
+        writer.buffer.putInt(StateStream.MAGIC)
+                .put(StateStream.VERSION)
+                .putShort((short) rows)
+                .putShort((short) cols);
+        return writer;
+    }
+
+    public static StateStreamWriter open(WritableByteChannel channel, GameEngine engine) {
+        return open(channel, engine.getRows(), engine.getCols(), StateStream.DEFAULT_KEYFRAME_TICKS);
+    }
+
+    // Write what changed since the last call; ticks must not go back.
+    public void record(long tick, GameEngine engine) {
+        if (closed) {
+            return;
+        }
+        if (engine.getRows() != rows || engine.getCols() != cols) {
+            throw new IllegalArgumentException("Stream is " + rows + "x" + cols + ", game is "
+                    + engine.getRows() + "x" + engine.getCols());
+        }
+        if (tick < lastTick) {
+            throw new IllegalArgumentException("State stream tick " + tick + " is before " + lastTick);
+        }
+        body.clear();
+        if (keyframeTick < 0 || tick - keyframeTick >= keyframeTicks) {
+            putKeyframe(tick, engine);
+            keyframeTick = tick;
+            keyframes++;
+        } else if (!putDelta(tick, engine)) {
+            return;
+        }
+        lastTick = tick;
+        frames++;
+        body.flip();
+        if (buffer.remaining() < Varints.MAX_BYTES + body.remaining()) {
+            flush();
+        }
+        int start = buffer.position();
+        Varints.put(buffer, body.remaining());
+        buffer.put(body);
+        bytesWritten += buffer.position() - start;
+    }
+
+    private void putKeyframe(long tick, GameEngine engine) {
+        body.put(StateStream.KEYFRAME);
+        Varints.put(body, tick);
+        score = engine.getScore();
+        level = engine.getLevel();
+        Varints.put(body, score);
+        Varints.put(body, level);
+        TripleStone stone = engine.getFallingStone();
+        piecePresent = stone != null;
+        if (piecePresent) {
+            takePiece(stone);
+            body.put((byte) 1);
+            Varints.put(body, pieceRow);
+            Varints.put(body, pieceCol);
+            Varints.put(body, StateStream.packColors(pieceColors[0], pieceColors[1], pieceColors[2]));
+        } else {
+            body.put((byte) 0);
+        }
+        stonesLanded = engine.getStonesLanded();
+        System.arraycopy(engine.getNextStone().colors, 0, nextColors, 0, nextColors.length);
+        Varints.put(body, StateStream.packColors(nextColors[0], nextColors[1], nextColors[2]));
+
+        boardHash = engine.getBoard().hash();
+        for (int col = 0, i = 0; col < cols; col++) {
+            for (int row = 0; row < rows; row++, i++) {
+                cells[i] = engine.getCell(row, col);
+            }
+        }
+        for (int i = 0; i < cells.length; ) {
+            int run = 1;
+            while (i + run < cells.length && cells[i + run] == cells[i]) {
+                run++;
+            }
+            Varints.put(body, (long) run << 3 | BoardSnapshot.code(cells[i]));
+            i += run;
+        }
+    }
+
+    // Frame what changed; false if nothing visible did.
+    private boolean putDelta(long tick, GameEngine engine) {
+        int flags = 0;
+        TripleStone stone = engine.getFallingStone();
+        int rotations = 0;
+        boolean newPiece = false;
+        if (stone == null) {
+            if (piecePresent) {
+                flags |= StateStream.PIECE_GONE;
+            }
+        } else if (!piecePresent || engine.getStonesLanded() != stonesLanded) {
+            newPiece = true;
+            flags |= StateStream.PIECE_MOVED
+                    | (sameColors(stone.colors, nextColors, 0) ? StateStream.PIECE_NEW : StateStream.PIECE_COLORS);
+        } else {
+            if (stone.row != pieceRow || stone.col != pieceCol) {
+                flags |= StateStream.PIECE_MOVED;
+            }
+            if (!sameColors(stone.colors, pieceColors, 0)) {
+                rotations = sameColors(stone.colors, pieceColors, 1) ? 1 : sameColors(stone.colors, pieceColors, 2) ? 2 : 0;
+                flags |= rotations > 0 ? StateStream.PIECE_ROTATED : StateStream.PIECE_COLORS;
+            }
+        }
+        TripleStone next = engine.getNextStone();
+        if (!sameColors(next.colors, nextColors, 0)) {
+            flags |= StateStream.NEXT;
+        }
+        if (engine.getScore() != score) {
+            flags |= StateStream.SCORE;
+        }
+        if (engine.getLevel() != level) {
+            flags |= StateStream.LEVEL;
+        }
+        // Equal hashes are taken for equal boards; a 64-bit Zobrist collision between two ticks is not a concern
+        if (engine.getBoard().hash() != boardHash) {
+            flags |= StateStream.CELLS;
+        }
+        if (flags == 0) {
+            return false;
+        }
+
+        body.put(StateStream.DELTA);
+        Varints.put(body, tick - lastTick);
+        Varints.put(body, flags);
+        if (stone != null) {
+            if (newPiece || stone.row != pieceRow || stone.col != pieceCol) {
+                Varints.put(body, stone.row);
+                Varints.put(body, stone.col);
+            }
+            if ((flags & StateStream.PIECE_ROTATED) != 0) {
+                body.put((byte) rotations);
+            }
+            if ((flags & StateStream.PIECE_COLORS) != 0) {
+                Varints.put(body, StateStream.packColors(stone.colors[0], stone.colors[1], stone.colors[2]));
+            }
+            takePiece(stone);
+        }
+        piecePresent = stone != null;
+        stonesLanded = engine.getStonesLanded();
+        if ((flags & StateStream.NEXT) != 0) {
+            System.arraycopy(next.colors, 0, nextColors, 0, nextColors.length);
+            Varints.put(body, StateStream.packColors(nextColors[0], nextColors[1], nextColors[2]));
+        }
+        if ((flags & StateStream.SCORE) != 0) {
+            score = engine.getScore();
+            Varints.put(body, score);
+        }
+        if ((flags & StateStream.LEVEL) != 0) {
+            level = engine.getLevel();
+            Varints.put(body, level);
+        }
+        if ((flags & StateStream.CELLS) != 0) {
+            boardHash = engine.getBoard().hash();
+            putChangedCells(engine);
+        }
+        return true;
+    }
+
+    // Runs of changed cells, each a length, the gap before it and the new codes two to a byte.
+    private void putChangedCells(GameEngine engine) {
+        int runEnd = 0; // Cell after the last run
+        int i = 0;
+        while (i < cells.length) {
+            char gem = engine.getCell(i % rows, i / rows);
+            if (gem == cells[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            do {
+                cells[i] = gem;
+                i++;
+                gem = i < cells.length ? engine.getCell(i % rows, i / rows) : 0;
+            } while (i < cells.length && gem != cells[i]);
+            Varints.put(body, i - start);
+            Varints.put(body, start - runEnd);
+            for (int cell = start; cell < i; cell += 2) {
+                int low = BoardSnapshot.code(cells[cell]);
+                int high = cell + 1 < i ? BoardSnapshot.code(cells[cell + 1]) : 0;
+                body.put((byte) (high << 4 | low));
+            }
+            runEnd = i;
+        }
+        Varints.put(body, 0);
+    }
+
+    private void takePiece(TripleStone stone) {
+        pieceRow = stone.row;
+        pieceCol = stone.col;
+        System.arraycopy(stone.colors, 0, pieceColors, 0, pieceColors.length);
+    }
+
+    // Whether colors equal the known ones shifted up the given number of times (TripleStone.shiftUp)
+    private static boolean sameColors(char[] colors, char[] known, int shiftUps) {
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] != known[(i + shiftUps) % known.length]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Stream bytes so far, header included
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    // Write what is buffered and close the channel.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongBinaryOperator;
+
+// Runs a pass over rows or columns [0, count) as fork-join tasks: the range is halved until a stripe
+// is no more than grain lines, every stripe returns a long and the results are combined pairwise
+// (XOR for hash deltas, OR for flags).
+@SuppressWarnings("serial") // ForkJoinTask is Serializable, but a pass over a board is never serialized
+final class Stripes extends RecursiveTask<Long> {
+
+    interface Work {
+        long run(int from, int to);
+    }
+
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final Work work;
+    private final LongBinaryOperator combine;
+
+    private Stripes(int from, int to, int grain, Work work, LongBinaryOperator combine) {
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+        this.work = work;
+        this.combine = combine;
+    }
+
+    // Without a pool, or when the range is a single stripe, the work runs on the calling thread.
+    static long run(ForkJoinPool pool, int count, int grain, Work work, LongBinaryOperator combine) {
+        if (pool == null || count <= grain) {
+            return work.run(0, count);
+        }
+        return pool.invoke(new Stripes(0, count, grain, work, combine));
+    }
+
+    @Override
+    protected Long compute() {
+        if (to - from <= grain) {
+            return work.run(from, to);
+        }
+        int middle = (from + to) >>> 1;
+        Stripes lower = new Stripes(from, middle, grain, work, combine);
+        lower.fork();
+        long upper = new Stripes(middle, to, grain, work, combine).compute();
+        return combine.applyAsLong(lower.join(), upper);
+    }
+}
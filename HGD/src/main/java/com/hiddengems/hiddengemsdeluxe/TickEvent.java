@@ -0,0 +1,26 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("hiddengems.Tick")
+@Label("Gravity Tick")
+@Category("Hidden Gems")
+@Description("One GameEngine.tick(): a new stone spawned or the falling stone moved down or landed")
+final class TickEvent extends jdk.jfr.Event {
+
+    @Label("Spawned")
+    boolean spawned;
+
+    @Label("Landed")
+    boolean landed;
+
+    @Label("Level")
+    int level;
+
+    @Label("Occupancy")
+    @Description("Gems on the board")
+    int occupancy;
+}
@@ -0,0 +1,82 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size, lock-free cache of search values keyed by Zobrist hash. Every entry is three longs:
+// check = key ^ value ^ meta, the value's bits and meta (depth and generation). Writers never lock;
+// a reader that sees a half-written entry gets a check mismatch and treats it as a miss.
+// Entries come in buckets of two: the first keeps the first or deepest result of the current
+// generation, the second always takes the newest one.
+final class TranspositionTable {
+
+    private static final int LONGS_PER_ENTRY = 3;
+    private static final int DEPTH_BITS = 8;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+    private final AtomicLongArray entries;
+    private final int bucketMask;
+    private volatile int generation = 1; // 0 marks an empty entry
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    // Room for 2^log2Entries entries
+    TranspositionTable(int log2Entries) {
+        this.entries = new AtomicLongArray(LONGS_PER_ENTRY << log2Entries);
+        this.bucketMask = (1 << (log2Entries - 1)) - 1;
+    }
+
+    // Age the entries of earlier searches so that new results may replace them.
+    void newGeneration() {
+        generation = generation == Integer.MAX_VALUE ? 1 : generation + 1;
+    }
+
+    // Stored value for the key with at least the given depth, or NaN.
+    double probe(long key, int depth) {
+        probes.increment();
+        int first = bucket(key);
+        for (int entry = first; entry < first + 2; entry++) {
+            int base = entry * LONGS_PER_ENTRY;
+            long value = entries.getAcquire(base + 1);
+            long meta = entries.getAcquire(base + 2);
+            if ((entries.getAcquire(base) ^ value ^ meta) == key && meta != 0 && (meta & DEPTH_MASK) >= depth) {
+                hits.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        return Double.NaN;
+    }
+
+    void store(long key, double value, int depth) {
+        int first = bucket(key);
+        int base = first * LONGS_PER_ENTRY;
+        long storedMeta = entries.getAcquire(base + 2);
+        boolean stale = (storedMeta >>> DEPTH_BITS) != generation;
+        if (!stale && depth <= (storedMeta & DEPTH_MASK)) {
+            base += LONGS_PER_ENTRY; // Keep the deeper result and use the always-replace slot
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        long meta = (long) generation << DEPTH_BITS | depth;
+        entries.setRelease(base, key ^ bits ^ meta);
+        entries.setRelease(base + 1, bits);
+        entries.setRelease(base + 2, meta);
+    }
+
+    private int bucket(long key) {
+        return ((int) (key >>> 32) & bucketMask) << 1;
+    }
+
+    long probes() {
+        return probes.sum();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    void resetStats() {
+        probes.reset();
+        hits.reset();
+    }
+}
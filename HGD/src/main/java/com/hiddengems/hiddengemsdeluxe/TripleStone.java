@@ -3,35 +3,51 @@ package com.hiddengems.hiddengemsdeluxe;
 import javafx.scene.canvas.GraphicsContext;
 
 class TripleStone {
-    private final HiddenGemsApplication hiddenGemsApplication;
+    private static final double GHOST_ALPHA = 0.3;
+
     int row;
     int col;
     char[] colors;
 
-    TripleStone(HiddenGemsApplication hiddenGemsApplication, int row, int col, char[] colors) {
-        this.hiddenGemsApplication = hiddenGemsApplication;
+    TripleStone(int row, int col, char[] colors) {
         this.row = row;
         this.col = col;
         this.colors = colors;
     }
 
-    void draw(GraphicsContext gc, double offsetX, double offsetY, double size) {
+    // The stone as it is now, as a value that does not change when this stone moves on
+    Piece toPiece() {
+        return new Piece(row, col, colors[0], colors[1], colors[2]);
+    }
+
+    void draw(GraphicsContext gc, GemSprites sprites, double offsetX, double offsetY, double size) {
         for (int i = 0; i < colors.length; i++) {
             double x = offsetX + col * size;
             double y = offsetY + (row + i) * size;
-            hiddenGemsApplication.drawCell(gc, colors[i], x, y, size);
+            sprites.draw(gc, colors[i], x, y);
         }
     }
 
-    void drawPreview(GraphicsContext gc, double offsetX, double offsetY, double size) {
+    // Faded copy at the landing row, only the cells the stone itself does not cover
+    void drawGhost(GraphicsContext gc, GemSprites sprites, double offsetX, double offsetY, double size, int landingRow) {
+        gc.setGlobalAlpha(GHOST_ALPHA);
+        for (int i = 0; i < colors.length; i++) {
+            if (landingRow + i >= row + colors.length) {
+                sprites.draw(gc, colors[i], offsetX + col * size, offsetY + (landingRow + i) * size);
+            }
+        }
+        gc.setGlobalAlpha(1.0);
+    }
+
+    void drawPreview(GraphicsContext gc, GemSprites sprites, double offsetX, double offsetY, double size) {
         for (int i = 0; i < colors.length; i++) {
             double x = offsetX;
             double y = offsetY + i * size;
-            hiddenGemsApplication.drawCell(gc, colors[i], x, y, size);
+            sprites.draw(gc, colors[i], x, y);
         }
     }
 
-    boolean moveDown(char[][] board) {
+    boolean moveDown(GemBoard board) {
         if (canMoveDown(board)) {
             row++;
             return true;
@@ -40,39 +56,64 @@ class TripleStone {
         return false;
     }
 
-    boolean canMoveDown(char[][] board) {
-        for (int i = 0; i < colors.length; i++) {
-            if (row + i + 1 >= HiddenGemsApplication.NUM_ROWS || board[row + i + 1][col] != ' ') {
-                return false;
-            }
+    boolean canMoveDown(GemBoard board) {
+        int below = row + colors.length;
+        int top = board.top(col);
+        if (below <= top) {
+            return below < top; // Above the stack: free until it rests on the top stone
         }
-        return true;
+        return below < board.rows() && board.isEmpty(below, col); // Slid into a hole under an overhang
+    }
+
+    // Row the stone would rest on if it fell straight down from here
+    int landingRow(GemBoard board) {
+        int top = board.top(col);
+        if (row + colors.length <= top) {
+            return top - colors.length;
+        }
+        int landing = row;
+        while (landing + colors.length < board.rows() && board.isEmpty(landing + colors.length, col)) {
+            landing++;
+        }
+        return landing;
     }
 
-    void moveLeft(char[][] board) {
+    // Drop to the landing row and place the stone there
+    void hardDrop(GemBoard board) {
+        row = landingRow(board);
+        placeOnBoard(board);
+    }
+
+    void moveLeft(GemBoard board) {
         if (col > 0 && canMoveLeft(board)) {
             col--;
         }
     }
 
-    void moveRight(char[][] board) {
-        if (col < HiddenGemsApplication.NUM_COLS - 1 && canMoveRight(board)) {
+    void moveRight(GemBoard board) {
+        if (col < board.cols() - 1 && canMoveRight(board)) {
             col++;
         }
     }
 
-    boolean canMoveLeft(char[][] board) {
+    boolean canMoveLeft(GemBoard board) {
+        if (col - 1 >= 0 && row + colors.length <= board.top(col - 1)) {
+            return true; // The whole stone is above the neighbouring stack
+        }
         for (int i = 0; i < colors.length; i++) {
-            if (col - 1 < 0 || board[row + i][col - 1] != ' ') {
+            if (col - 1 < 0 || !board.isEmpty(row + i, col - 1)) {
                 return false;
             }
         }
         return true;
     }
 
-    boolean canMoveRight(char[][] board) {
+    boolean canMoveRight(GemBoard board) {
+        if (col + 1 < board.cols() && row + colors.length <= board.top(col + 1)) {
+            return true; // The whole stone is above the neighbouring stack
+        }
         for (int i = 0; i < colors.length; i++) {
-            if (col + 1 >= HiddenGemsApplication.NUM_COLS || board[row + i][col + 1] != ' ') {
+            if (col + 1 >= board.cols() || !board.isEmpty(row + i, col + 1)) {
                 return false;
             }
         }
@@ -89,9 +130,9 @@ class TripleStone {
         }
     }
 
-    void placeOnBoard(char[][] board) {
+    void placeOnBoard(GemBoard board) {
         for (int i = 0; i < colors.length; i++) {
-            board[row + i][col] = colors[i];
+            board.set(row + i, col, colors[i]);
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.nio.ByteBuffer;
+
+// Unsigned LEB128: seven bits per byte, low bits first, the high bit set on every byte but the last.
+// Small numbers like tick deltas take a single byte.
+final class Varints {
+
+    static final int MAX_BYTES = 10; // A full 64-bit value
+
+    private Varints() {
+    }
+
+    static void put(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long get(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_BYTES + " bytes");
+    }
+}
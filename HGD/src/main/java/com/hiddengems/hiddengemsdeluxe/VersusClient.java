@@ -0,0 +1,232 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// The application's side of a versus match. Keys go to the server instead of the simulation; the
+// server sends them back between the ticks it ran (see VersusProtocol), and advance() plays exactly
+// that on the local simulation once per frame, so the game on screen is the server's game, at most
+// a heartbeat and a round trip behind. A virtual thread reads the socket and queues the messages
+// for the FX thread.
+public final class VersusClient implements Closeable {
+
+    private static final int READ_BYTES = 4096;
+    private static final int MAX_CATCH_UP_TICKS = 25; // Per frame, like the game loop's 250 ms catch-up limit
+
+    private record Message(byte type, int value) {
+    }
+
+    private final SocketChannel channel;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(VersusProtocol.KEY_BYTES);
+    private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+    private long seed;
+    private int player;
+    private int rows;
+    private int cols;
+    private int shiftDelayTicks;
+    private int shiftRepeatTicks;
+    private int ticksLeft; // Of the TICKS message being played
+    private int opponentScore;
+    private int result = -1; // 1 won, 0 lost, -1 still playing
+    private Runnable onStatus = () -> {
+    };
+
+    private VersusClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    // Connect and wait until the server has paired us with an opponent.
+    public static VersusClient connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        VersusClient client = new VersusClient(channel);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BYTES);
+        Queue queue = client.new Queue();
+        while (queue.player < 0) {
+            if (channel.read(buffer) < 0) {
+                channel.close();
+                throw new IOException("Versus server closed the connection before the match started");
+            }
+            buffer.flip();
+            VersusProtocol.read(buffer, queue);
+            buffer.compact();
+        }
+        Thread.ofVirtual().name("versus-reader").start(() -> client.read(buffer, queue));
+        return client;
+    }
+
+    private void read(ByteBuffer buffer, Queue queue) {
+        try {
+            do {
+                buffer.flip();
+                VersusProtocol.read(buffer, queue);
+                buffer.compact();
+            } while (channel.read(buffer) >= 0);
+        } catch (IOException | IllegalArgumentException e) {
+            if (channel.isOpen()) {
+                System.err.println("Versus connection lost: " + e);
+            }
+        }
+        messages.add(new Message(VersusProtocol.RESULT, -1)); // Gone: stop waiting for ticks
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getShiftDelayTicks() {
+        return shiftDelayTicks;
+    }
+
+    public int getShiftRepeatTicks() {
+        return shiftRepeatTicks;
+    }
+
+    // Run on the FX thread when the opponent's score or the result changes.
+    public void setOnStatus(Runnable onStatus) {
+        this.onStatus = onStatus;
+    }
+
+    public String status() {
+        String players = "player " + (player + 1) + ", opponent " + opponentScore + " points";
+        return switch (result) {
+            case 1 -> players + ", you win";
+            case 0 -> players + ", you lose";
+            default -> players;
+        };
+    }
+
+    // Whether the server has sent the result yet, and whether it was a win.
+    public boolean isDecided() {
+        return result >= 0;
+    }
+
+    public boolean isWon() {
+        return result == 1;
+    }
+
+    // Send a key to the server; it acts when it comes back. Keys after the result go nowhere.
+    public void send(GameSimulation.Key key, boolean pressed) {
+        if (result >= 0 || !channel.isOpen()) {
+            return;
+        }
+        sendBuffer.clear();
+        VersusProtocol.putKey(sendBuffer, Replay.encode(key, pressed));
+        sendBuffer.flip();
+        try {
+            while (sendBuffer.hasRemaining()) {
+                channel.write(sendBuffer);
+            }
+        } catch (IOException e) {
+            System.err.println("Versus key not sent: " + e);
+            try {
+                channel.close();
+            } catch (IOException closing) {
+                // Gone either way
+            }
+        }
+    }
+
+    // Play what the server confirmed since the last frame; FX thread only.
+    void advance(GameSimulation simulation) {
+        int budget = MAX_CATCH_UP_TICKS;
+        while (budget > 0) {
+            if (ticksLeft > 0) {
+                int run = Math.min(ticksLeft, budget);
+                for (int i = 0; i < run; i++) {
+                    simulation.update();
+                }
+                ticksLeft -= run;
+                budget -= run;
+                continue;
+            }
+            Message message = messages.poll();
+            if (message == null) {
+                return;
+            }
+            switch (message.type()) {
+                case VersusProtocol.TICKS -> ticksLeft = message.value();
+                case VersusProtocol.KEY -> {
+                    byte code = (byte) message.value();
+                    if (VersusProtocol.isPress(code)) {
+                        simulation.press(VersusProtocol.key(code));
+                    } else {
+                        simulation.release(VersusProtocol.key(code));
+                    }
+                }
+                case VersusProtocol.GARBAGE -> simulation.getEngine().addGarbage(message.value());
+                case VersusProtocol.OPPONENT -> {
+                    opponentScore = message.value();
+                    onStatus.run();
+                }
+                case VersusProtocol.RESULT -> {
+                    if (result < 0 && message.value() >= 0) {
+                        result = message.value();
+                        onStatus.run();
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected versus message " + message.type());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Takes the start on the connecting thread and queues everything after it for the FX thread.
+    private final class Queue implements VersusProtocol.Listener {
+
+        private int player = -1;
+
+        @Override
+        public void start(long seed, int player, int rows, int cols, int shiftDelayTicks, int shiftRepeatTicks) {
+            VersusClient.this.seed = seed;
+            VersusClient.this.player = player;
+            VersusClient.this.rows = rows;
+            VersusClient.this.cols = cols;
+            VersusClient.this.shiftDelayTicks = shiftDelayTicks;
+            VersusClient.this.shiftRepeatTicks = shiftRepeatTicks;
+            this.player = player;
+        }
+
+        @Override
+        public void ticks(int count) {
+            messages.add(new Message(VersusProtocol.TICKS, count));
+        }
+
+        @Override
+        public void key(byte code) {
+            messages.add(new Message(VersusProtocol.KEY, code));
+        }
+
+        @Override
+        public void garbage(int rows) {
+            messages.add(new Message(VersusProtocol.GARBAGE, rows));
+        }
+
+        @Override
+        public void opponent(int score) {
+            messages.add(new Message(VersusProtocol.OPPONENT, score));
+        }
+
+        @Override
+        public void result(boolean won) {
+            messages.add(new Message(VersusProtocol.RESULT, won ? 1 : 0));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// The server's end of one player's socket, owned by the shard thread that plays the match. Messages
+// are queued in a direct buffer and written once per tick. The ticks the match ran are only counted
+// and go out as one TICKS message in front of the next event, or as a heartbeat every HEARTBEAT_TICKS.
+// A client that lets the buffer fill up is too slow to follow its game and is dropped.
+final class VersusConnection {
+
+    static final int HEARTBEAT_TICKS = 10; // 100 ms: how far a quiet client's game may trail the server's
+    private static final int INPUT_BYTES = 256;
+    private static final int OUTPUT_BYTES = 4096;
+    private static final int CLOSE_TICKS = 100; // How long a finished match's last messages may take to drain
+
+    private final SocketChannel channel;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BYTES);
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BYTES);
+    private VersusMatch match;
+    private int player;
+    private int pendingTicks;
+    private int closeTicks = -1; // Counting down once the match is over
+    private boolean closed;
+
+    VersusConnection(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    void join(VersusMatch match, int player) {
+        this.match = match;
+        this.player = player;
+    }
+
+    void start(long seed, GameSimulation simulation) {
+        if (reserve(VersusProtocol.START_BYTES)) {
+            VersusProtocol.putStart(output, seed, player, simulation);
+        }
+    }
+
+    void tick() {
+        pendingTicks++;
+    }
+
+    void key(byte code) {
+        if (reserve(VersusProtocol.KEY_BYTES)) {
+            VersusProtocol.putKey(output, code);
+        }
+    }
+
+    void garbage(int rows) {
+        if (reserve(1 + Varints.MAX_BYTES)) {
+            VersusProtocol.putCount(output, VersusProtocol.GARBAGE, rows);
+        }
+    }
+
+    void opponent(int score) {
+        if (reserve(1 + Varints.MAX_BYTES)) {
+            VersusProtocol.putCount(output, VersusProtocol.OPPONENT, score);
+        }
+    }
+
+    // The last message; the connection closes once it has gone out.
+    void result(boolean won) {
+        if (reserve(2)) {
+            output.put(VersusProtocol.RESULT).put((byte) (won ? 1 : 0));
+        }
+        match = null;
+        closeTicks = CLOSE_TICKS;
+    }
+
+    // Read what the client sent and apply its keys to the match.
+    void read() {
+        try {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        input.flip();
+        while (input.remaining() >= 2) {
+            byte type = input.get();
+            byte code = input.get();
+            if (type != VersusProtocol.KEY || VersusProtocol.key(code) == null) {
+                close(); // Not a client of ours
+                return;
+            }
+            if (match != null) {
+                match.input(player, code);
+            }
+        }
+        input.compact();
+    }
+
+    // Send what is queued, with a heartbeat if it is due; closes a finished connection once drained.
+    void flush() {
+        if (closed) {
+            return;
+        }
+        if (pendingTicks >= HEARTBEAT_TICKS) {
+            reserve(0);
+        }
+        if (output.position() > 0) {
+            output.flip();
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            output.compact();
+        }
+        if (closeTicks >= 0 && (output.position() == 0 || closeTicks-- == 0)) {
+            close();
+        }
+    }
+
+    // Make room for a message, sending the ticks run so far in front of it.
+    private boolean reserve(int bytes) {
+        if (closed || closeTicks >= 0) {
+            return false;
+        }
+        if (output.remaining() < 1 + Varints.MAX_BYTES + bytes) {
+            close();
+            return false;
+        }
+        if (pendingTicks > 0) {
+            VersusProtocol.putCount(output, VersusProtocol.TICKS, pendingTicks);
+            pendingTicks = 0;
+        }
+        return true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    // Drop the client; an unfinished match is lost for it.
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Gone either way
+        }
+        if (match != null) {
+            VersusMatch lost = match;
+            match = null;
+            lost.disconnected(player);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Load generator for a VersusServer: keeps 2 x N players connected, each on a virtual thread with a
+// blocking socket and a second one mashing random keys, and starts a new match whenever one ends.
+// Every key is timed from sending it until the server sends it back, which is the latency a player
+// feels before the game reacts. At the end it reports how many match ticks per second the players
+// were sent against the server's nominal 100 per match, and the spread over matches of their tick
+// rate and mean key latency.
+//
+//   java -cp target/classes com.hiddengems.hiddengemsdeluxe.VersusLoadClient --matches 1000 --seconds 30
+public final class VersusLoadClient {
+
+    private static final GameSimulation.Key[] KEYS = {
+            GameSimulation.Key.LEFT, GameSimulation.Key.RIGHT, GameSimulation.Key.SPACE, GameSimulation.Key.UP};
+    private static final int LATENCY_BUCKETS = 100_000; // 10 us each, up to 1 s
+    private static final long BUCKET_NANOS = 10_000;
+    private static final long RELEASE_MILLIS = 30; // How long a key is held
+    private static final long FAILURE_PAUSE_MILLIS = 100; // Before connecting again after a failure
+
+    private String host = "localhost";
+    private int port = VersusProtocol.DEFAULT_PORT;
+    private int matches = 100;
+    private int seconds = 30;
+    private int keyMillis = 250; // Mean time between two presses of a player
+
+    private volatile boolean stopped;
+    private final Set<SocketChannel> open = ConcurrentHashMap.newKeySet();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+    private final ConcurrentLinkedQueue<double[]> matchStats = new ConcurrentLinkedQueue<>(); // Ticks/s, mean latency ms
+
+    private VersusLoadClient() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        VersusLoadClient client = new VersusLoadClient();
+        try {
+            client.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: VersusLoadClient [--host H] [--port P] [--matches N] [--seconds S] [--key-millis MS]");
+            System.exit(2);
+        }
+        client.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                case "--matches" -> matches = Integer.parseInt(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                case "--key-millis" -> keyMillis = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        if (matches < 1 || seconds < 1 || keyMillis < 1) {
+            throw new IllegalArgumentException("Matches, seconds and key interval must be positive");
+        }
+    }
+
+    private void run() throws InterruptedException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        List<Thread> players = new ArrayList<>();
+        for (int i = 0; i < 2 * matches; i++) {
+            players.add(Thread.ofVirtual().name("versus-player-" + i).start(() -> play(address)));
+        }
+        long startNanos = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        stopped = true;
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        for (SocketChannel channel : open) {
+            close(channel);
+        }
+        for (Thread player : players) {
+            player.join();
+        }
+        report(elapsed);
+    }
+
+    // Play match after match until stopped.
+    private void play(InetSocketAddress address) {
+        while (!stopped) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                open.add(channel);
+                playMatch(channel);
+            } catch (IOException e) {
+                if (!stopped) {
+                    failures.incrementAndGet();
+                    pause(FAILURE_PAUSE_MILLIS);
+                }
+            } finally {
+                if (channel != null) {
+                    open.remove(channel);
+                    close(channel);
+                }
+            }
+        }
+    }
+
+    private void playMatch(SocketChannel channel) throws IOException {
+        Match match = new Match();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        Thread keyboard = null;
+        try {
+            while (!match.over && channel.read(buffer) >= 0) {
+                buffer.flip();
+                VersusProtocol.read(buffer, match);
+                buffer.compact();
+                if (keyboard == null && match.startNanos > 0) {
+                    keyboard = Thread.ofVirtual().start(() -> mash(channel, match));
+                }
+            }
+        } finally {
+            if (keyboard != null) {
+                keyboard.interrupt();
+            }
+            if (match.over) {
+                finished.incrementAndGet();
+            }
+            double playedSeconds = (System.nanoTime() - match.startNanos) / 1e9;
+            if (match.startNanos > 0 && playedSeconds >= 1) { // Matches cut off by the end of the run count too
+                matchStats.add(new double[]{match.ticks / playedSeconds,
+                        match.echoed == 0 ? 0 : match.latencyNanos / 1e6 / match.echoed});
+            }
+        }
+    }
+
+    // Press and release random keys until the match is over.
+    private void mash(SocketChannel channel, Match match) {
+        ByteBuffer out = ByteBuffer.allocate(VersusProtocol.KEY_BYTES);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            while (!match.over && !stopped) {
+                Thread.sleep(random.nextLong(Math.max(1, 2L * keyMillis - RELEASE_MILLIS)) + 1);
+                GameSimulation.Key key = KEYS[random.nextInt(KEYS.length)];
+                send(channel, out, match, Replay.encode(key, true));
+                Thread.sleep(RELEASE_MILLIS);
+                send(channel, out, match, Replay.encode(key, false));
+            }
+        } catch (InterruptedException | IOException e) {
+            // Match over or connection gone
+        }
+    }
+
+    private static void send(SocketChannel channel, ByteBuffer out, Match match, byte code) throws IOException {
+        out.clear();
+        VersusProtocol.putKey(out, code);
+        out.flip();
+        match.sent.add(System.nanoTime()); // Before writing, so the echo always finds it
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    private void report(double elapsed) {
+        long totalKeys = keys.get();
+        System.out.printf("%d players for %.1f s: %d matches finished, %d connection failures%n",
+                2 * matches, elapsed, finished.get(), failures.get());
+        System.out.printf("%.0f match ticks/s received (%d expected from %d matches at %d ticks/s)%n",
+                ticks.get() / 2.0 / elapsed, matches * 1000L / GameSimulation.TICK_MILLIS, matches,
+                1000 / GameSimulation.TICK_MILLIS);
+        System.out.printf("%d keys echoed: latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms%n",
+                totalKeys, percentile(0.5), percentile(0.99), percentile(0.999));
+        List<double[]> stats = new ArrayList<>(matchStats);
+        if (!stats.isEmpty()) {
+            double[] rates = stats.stream().mapToDouble(s -> s[0]).sorted().toArray();
+            double[] means = stats.stream().mapToDouble(s -> s[1]).sorted().toArray();
+            System.out.printf("per match and player: ticks/s min %.1f, p1 %.1f, median %.1f;"
+                            + " mean latency median %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    rates[0], rates[(int) (rates.length * 0.01)], rates[rates.length / 2],
+                    means[means.length / 2], means[Math.min(means.length - 1, (int) (means.length * 0.99))],
+                    means[means.length - 1]);
+        }
+    }
+
+    private double percentile(double fraction) {
+        long total = keys.get();
+        long seen = 0;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            seen += latencies.get(bucket);
+            if (seen > fraction * total) {
+                return (bucket + 1) * BUCKET_NANOS / 1e6;
+            }
+        }
+        return LATENCY_BUCKETS * BUCKET_NANOS / 1e6;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Gone either way
+        }
+    }
+
+    // One player's view of a match: counts the ticks and times the keys coming back.
+    private final class Match implements VersusProtocol.Listener {
+
+        private final ConcurrentLinkedQueue<Long> sent = new ConcurrentLinkedQueue<>();
+        private volatile long startNanos;
+        private volatile boolean over;
+        private long ticks;
+        private long echoed;
+        private long latencyNanos;
+
+        @Override
+        public void start(long seed, int player, int rows, int cols, int shiftDelayTicks, int shiftRepeatTicks) {
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void ticks(int count) {
+            this.ticks += count;
+            VersusLoadClient.this.ticks.addAndGet(count);
+        }
+
+        @Override
+        public void key(byte code) {
+            Long sentNanos = sent.poll();
+            if (sentNanos == null) {
+                return;
+            }
+            long latency = System.nanoTime() - sentNanos;
+            echoed++;
+            latencyNanos += latency;
+            keys.incrementAndGet();
+            latencies.incrementAndGet((int) Math.min(latency / BUCKET_NANOS, LATENCY_BUCKETS - 1));
+        }
+
+        @Override
+        public void garbage(int rows) {
+        }
+
+        @Override
+        public void opponent(int score) {
+        }
+
+        @Override
+        public void result(boolean won) {
+            over = true;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// One head-to-head match as the server plays it: two games from the same seed, so both players get the
+// same stones, ticked together by their shard. Keys are applied the moment they are read and sent back
+// to their player; after every tick the rows each side's cascades earned go to the other side. The
+// match ends when a game is over or a player leaves; if both games end on the same tick the higher
+// score wins, and a tie is lost by both.
+final class VersusMatch {
+
+    private final VersusConnection[] connections;
+    private final GameSimulation[] simulations = new GameSimulation[2];
+    private final int[] scoresSent = new int[2];
+    private boolean over;
+
+    VersusMatch(long seed, VersusConnection first, VersusConnection second) {
+        connections = new VersusConnection[]{first, second};
+        for (int player = 0; player < 2; player++) {
+            simulations[player] = new GameSimulation(
+                    new GameEngine(seed, GameEngine.NUM_ROWS, GameEngine.NUM_COLS, GameRules.DEFAULT));
+            connections[player].join(this, player);
+            connections[player].start(seed, simulations[player]);
+        }
+    }
+
+    // A key read from a player's socket: applied before the next update, which is where the client applies it too.
+    void input(int player, byte code) {
+        GameSimulation.Key key = VersusProtocol.key(code);
+        if (over || key == GameSimulation.Key.ENTER) {
+            return; // A versus game can't be paused
+        }
+        if (VersusProtocol.isPress(code)) {
+            simulations[player].press(key);
+        } else {
+            simulations[player].release(key);
+        }
+        connections[player].key(code);
+    }
+
+    // Run one tick of both games; false once the match is over.
+    boolean tick() {
+        if (over) {
+            return false;
+        }
+        for (int player = 0; player < 2; player++) {
+            simulations[player].update();
+            connections[player].tick();
+        }
+        for (int player = 0; player < 2 && !over; player++) {
+            GameEngine engine = simulations[player].getEngine();
+            GameEngine opponent = simulations[1 - player].getEngine();
+            int rows = engine.takeGarbage();
+            if (rows > 0) {
+                opponent.addGarbage(rows);
+                connections[1 - player].garbage(rows);
+            }
+            if (engine.getScore() != scoresSent[player]) {
+                scoresSent[player] = engine.getScore();
+                connections[1 - player].opponent(engine.getScore());
+            }
+        }
+        boolean firstLost = simulations[0].getEngine().isGameOver();
+        boolean secondLost = simulations[1].getEngine().isGameOver();
+        if (!over && (firstLost || secondLost)) {
+            over = true;
+            int firstScore = simulations[0].getEngine().getScore();
+            int secondScore = simulations[1].getEngine().getScore();
+            connections[0].result(!firstLost || secondLost && firstScore > secondScore);
+            connections[1].result(!secondLost || firstLost && secondScore > firstScore);
+        }
+        return !over;
+    }
+
+    // A player's socket closed or fell behind; the other one wins.
+    void disconnected(int player) {
+        if (!over) {
+            over = true;
+            connections[1 - player].result(true);
+        }
+    }
+}
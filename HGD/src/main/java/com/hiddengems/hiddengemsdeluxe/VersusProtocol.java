@@ -0,0 +1,117 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// Wire format of versus matches. Connecting to a VersusServer asks for a match; the server pairs
+// connections as they come and plays both games itself. A client only sends its key presses and
+// releases. The server applies each one at its current tick and sends it back between the ticks it
+// has run, so the client plays the very same game on its own engine, one confirmed tick behind.
+// Every message is a type byte and its payload; counts are varints (see Varints).
+//   server to client:
+//     START    long seed, byte player, short rows, short cols, short shift delay, short shift repeat
+//     TICKS    varint n: the server ran n more updates
+//     KEY      byte key code as in Replay.encode, applied before the next update
+//     GARBAGE  varint rows the opponent's cascades sent, added before the next update
+//     OPPONENT varint the opponent's score
+//     RESULT   byte 1 if this player won, 0 if not; the last message of the match
+//   client to server:
+//     KEY      byte key code
+final class VersusProtocol {
+
+    static final byte START = 1;
+    static final byte TICKS = 2;
+    static final byte KEY = 3;
+    static final byte GARBAGE = 4;
+    static final byte OPPONENT = 5;
+    static final byte RESULT = 6;
+
+    static final int START_BYTES = 1 + 8 + 1 + 2 + 2 + 2 + 2;
+    static final int KEY_BYTES = 2;
+    static final int MAX_MESSAGE_BYTES = START_BYTES;
+    static final int DEFAULT_PORT = 7733;
+
+    // What a client is told; called in the order the messages came.
+    interface Listener {
+
+        void start(long seed, int player, int rows, int cols, int shiftDelayTicks, int shiftRepeatTicks);
+
+        void ticks(int count);
+
+        void key(byte code);
+
+        void garbage(int rows);
+
+        void opponent(int score);
+
+        void result(boolean won);
+    }
+
+    private VersusProtocol() {
+    }
+
+    static void putStart(ByteBuffer out, long seed, int player, GameSimulation simulation) {
+        out.put(START)
+                .putLong(seed)
+                .put((byte) player)
+                .putShort((short) simulation.getEngine().getRows())
+                .putShort((short) simulation.getEngine().getCols())
+                .putShort((short) simulation.getShiftDelayTicks())
+                .putShort((short) simulation.getShiftRepeatTicks());
+    }
+
+    static void putCount(ByteBuffer out, byte type, long count) {
+        out.put(type);
+        Varints.put(out, count);
+    }
+
+    static void putKey(ByteBuffer out, byte code) {
+        out.put(KEY).put(code);
+    }
+
+    // The key of a client's code, or null for codes outside GameSimulation.Key.
+    static GameSimulation.Key key(byte code) {
+        int ordinal = (code & 0xFF) >> 1;
+        return ordinal < Replay.KEYS.length ? Replay.KEYS[ordinal] : null;
+    }
+
+    static boolean isPress(byte code) {
+        return (code & 1) == 0;
+    }
+
+    // Hand every complete server message in the buffer to the listener. A message cut off at the end
+    // is left in the buffer for the next read.
+    static void read(ByteBuffer in, Listener listener) {
+        while (in.hasRemaining()) {
+            in.mark();
+            try {
+                readMessage(in, listener);
+            } catch (BufferUnderflowException e) {
+                in.reset();
+                return;
+            }
+        }
+    }
+
+    // Every field is read before the listener is called, so a cut-off message is not half delivered.
+    private static void readMessage(ByteBuffer in, Listener listener) {
+        byte type = in.get();
+        switch (type) {
+            case START -> {
+                long seed = in.getLong();
+                int player = in.get();
+                int rows = in.getShort();
+                int cols = in.getShort();
+                int shiftDelay = in.getShort();
+                int shiftRepeat = in.getShort();
+                listener.start(seed, player, rows, cols, shiftDelay, shiftRepeat);
+            }
+            case TICKS -> listener.ticks((int) Varints.get(in));
+            case KEY -> listener.key(in.get());
+            case GARBAGE -> listener.garbage((int) Varints.get(in));
+            case OPPONENT -> listener.opponent((int) Varints.get(in));
+            case RESULT -> listener.result(in.get() != 0);
+            default -> throw new IllegalArgumentException("Unknown versus message " + type);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Authoritative server for versus matches (see VersusProtocol). The main thread accepts connections
+// and pairs them as they come; every pair becomes a VersusMatch on one of a few shards. A shard is a
+// task run at a fixed rate of one GameSimulation tick on a small scheduled pool, not a thread per
+// game: each run reads the shard's sockets through its own non-blocking selector, ticks all of its
+// matches and writes what they sent. A shard's sockets and matches are only ever touched by its own
+// runs, so nothing in a match is shared between threads. Runs that start late are caught up back to
+// back; the statistics line every few seconds shows whether the shards keep up.
+//
+//   java -cp target/classes com.hiddengems.hiddengemsdeluxe.VersusServer --port 7733 --threads 4 --shards 16
+public final class VersusServer {
+
+    private static final long TICK_NANOS = GameSimulation.TICK_MILLIS * 1_000_000L;
+    private static final int STATS_SECONDS = 5;
+
+    private int port = VersusProtocol.DEFAULT_PORT;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int shards = 4 * Runtime.getRuntime().availableProcessors();
+    private long seed = new Random().nextLong(); // Match i is played from seed + i
+
+    private final AtomicLong nextSeed = new AtomicLong();
+    private final AtomicInteger matches = new AtomicInteger();
+    private final AtomicLong matchTicks = new AtomicLong();
+    private final AtomicLong shardTicks = new AtomicLong();
+    private final LongAccumulator maxTickNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+
+    private VersusServer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        VersusServer server = new VersusServer();
+        try {
+            server.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: VersusServer [--port P] [--threads T] [--shards S] [--seed S]");
+            System.exit(2);
+        }
+        server.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--shards" -> shards = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        if (threads < 1 || shards < 1) {
+            throw new IllegalArgumentException("Threads and shards must be at least 1");
+        }
+    }
+
+    private void run() throws IOException {
+        nextSeed.set(seed);
+        ScheduledExecutorService pool = Executors.newScheduledThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "versus-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Shard[] shardList = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            shardList[i] = new Shard();
+            // Spread the shards over the tick so that they don't all wake at once
+            pool.scheduleAtFixedRate(shardList[i]::run, i * TICK_NANOS / shards, TICK_NANOS, TimeUnit.NANOSECONDS);
+        }
+        pool.scheduleAtFixedRate(this::report, STATS_SECONDS, STATS_SECONDS, TimeUnit.SECONDS);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.err.printf("Versus server on port %d, %d shards on %d threads%n", port, shards, threads);
+            SocketChannel waiting = null;
+            for (int pairs = 0; ; ) {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                if (waiting == null || hungUp(waiting)) {
+                    waiting = channel;
+                    continue;
+                }
+                shardList[pairs++ % shards].pairs.add(new SocketChannel[]{waiting, channel});
+                waiting = null;
+            }
+        }
+    }
+
+    // A client that gave up while waiting for an opponent must not be paired: the next player would win
+    // at once. isOpen() only knows about local closes; a waiting client sends nothing before START, so a
+    // non-blocking read returns 0 while it is still there and -1 once it has hung up.
+    private static boolean hungUp(SocketChannel channel) {
+        try {
+            if (channel.read(ByteBuffer.allocate(1)) == 0) {
+                return false;
+            }
+        } catch (IOException e) {
+            // Reset by the client, gone as well
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Gone either way
+        }
+        return true;
+    }
+
+    private void report() {
+        long ticks = shardTicks.getAndSet(0);
+        System.err.printf("%d matches, %.0f match ticks/s, %.0f shard ticks/s of %d, slowest tick %.2f ms, worst lag %.1f ms%n",
+                matches.get(), matchTicks.getAndSet(0) / (double) STATS_SECONDS, ticks / (double) STATS_SECONDS,
+                shards * 1000 / GameSimulation.TICK_MILLIS,
+                maxTickNanos.getThenReset() / 1e6, maxLagNanos.getThenReset() / 1e6);
+    }
+
+    // A share of the matches, ticked by one run of its task at a time.
+    private final class Shard {
+
+        private final ConcurrentLinkedQueue<SocketChannel[]> pairs = new ConcurrentLinkedQueue<>(); // From the acceptor
+        private final Selector selector;
+        private final List<VersusMatch> shardMatches = new ArrayList<>();
+        private final List<VersusConnection> connections = new ArrayList<>();
+        private long firstTick = -1;
+        private long ticks;
+
+        Shard() {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void run() {
+            try {
+                tick();
+            } catch (RuntimeException | IOException e) {
+                // An exception would cancel the task and strand every match on the shard
+                System.err.println("Versus shard tick failed: " + e);
+                e.printStackTrace();
+            }
+        }
+
+        private void tick() throws IOException {
+            long start = System.nanoTime();
+            if (firstTick < 0) {
+                firstTick = start;
+            }
+            maxLagNanos.accumulate(start - firstTick - ticks * TICK_NANOS);
+            ticks++;
+
+            for (SocketChannel[] pair; (pair = pairs.poll()) != null; ) {
+                VersusConnection first = register(pair[0]);
+                VersusConnection second = register(pair[1]);
+                shardMatches.add(new VersusMatch(nextSeed.getAndIncrement(), first, second));
+                matches.incrementAndGet();
+            }
+
+            selector.selectNow();
+            for (SelectionKey key : selector.selectedKeys()) {
+                ((VersusConnection) key.attachment()).read();
+            }
+            selector.selectedKeys().clear();
+
+            int running = shardMatches.size();
+            for (int i = 0; i < shardMatches.size(); ) {
+                if (shardMatches.get(i).tick()) {
+                    i++;
+                } else {
+                    shardMatches.set(i, shardMatches.get(shardMatches.size() - 1));
+                    shardMatches.remove(shardMatches.size() - 1);
+                    matches.decrementAndGet();
+                }
+            }
+            matchTicks.addAndGet(running);
+
+            for (int i = 0; i < connections.size(); ) {
+                VersusConnection connection = connections.get(i);
+                connection.flush();
+                if (connection.isClosed()) {
+                    connections.set(i, connections.get(connections.size() - 1));
+                    connections.remove(connections.size() - 1);
+                } else {
+                    i++;
+                }
+            }
+            shardTicks.incrementAndGet();
+            maxTickNanos.accumulate(System.nanoTime() - start);
+        }
+
+        private VersusConnection register(SocketChannel channel) throws IOException {
+            VersusConnection connection = new VersusConnection(channel);
+            if (channel.isOpen()) {
+                channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+            connections.add(connection);
+            return connection;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+// Zobrist keys for (cell, gem). A board's hash is the XOR of the keys of its non-empty cells, so
+// changing one cell costs two XORs and equal boards hash equally whatever their backend.
+// Keys are a SplitMix64 mix of the pair rather than a table, so boards of any size can share them.
+final class Zobrist {
+
+    static final int MARKED = 5; // Gem index of 'M'; the colours are 0..4 in "RGBYP" order
+
+    private Zobrist() {
+    }
+
+    static long key(int cell, char gem) {
+        int index = gemIndex(gem);
+        return index < 0 ? 0L : key(cell, index);
+    }
+
+    static long key(int cell, int gemIndex) {
+        return mix(((long) cell << 3 | gemIndex) + 1);
+    }
+
+    // XOR of the keys of every set bit in a bitboard word whose first cell is base
+    static long keys(long bits, int base, int gemIndex) {
+        long hash = 0;
+        while (bits != 0) {
+            hash ^= key(base + Long.numberOfTrailingZeros(bits), gemIndex);
+            bits &= bits - 1;
+        }
+        return hash;
+    }
+
+    static long mix(long z) {
+        z *= 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static int gemIndex(char gem) {
+        switch (gem) {
+            case 'R':
+                return 0;
+            case 'G':
+                return 1;
+            case 'B':
+                return 2;
+            case 'Y':
+                return 3;
+            case 'P':
+                return 4;
+            case 'M':
+                return MARKED;
+            default:
+                return -1;
+        }
+    }
+}
@@ -10,7 +10,8 @@ module com.hiddengems.hiddengemsdeluxe {
     requires org.kordamp.bootstrapfx.core;
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
-    requires java.desktop;
+    requires jdk.jfr;
+    requires jdk.management;
 
     opens com.hiddengems.hiddengemsdeluxe to javafx.fxml;
     exports com.hiddengems.hiddengemsdeluxe;
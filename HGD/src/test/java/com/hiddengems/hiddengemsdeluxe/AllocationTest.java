@@ -0,0 +1,68 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The tick path must not allocate once the game is running: garbage there turns into GC pauses and
+// dropped frames. Plays seeded games with random keys and measures the bytes this thread allocates.
+class AllocationTest {
+
+    private static final int TICKS = 10_000;
+    private static final int WARM_UP_TICKS = 200_000; // Let the JIT settle first
+    private static final long MAX_BYTES_PER_TICKS = 256; // Room for measurement noise, far below one Cascade
+
+    private static final GameSimulation.Key[] KEYS = {
+            GameSimulation.Key.LEFT, GameSimulation.Key.RIGHT, GameSimulation.Key.DOWN,
+            GameSimulation.Key.SPACE, GameSimulation.Key.UP
+    };
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void bitBoardTicksDoNotAllocate() {
+        assertTicksDoNotAllocate(new GameSimulation(new GameEngine(7, GameEngine.NUM_ROWS, GameEngine.NUM_COLS, GameRules.DEFAULT)));
+    }
+
+    @Test
+    void charBoardTicksDoNotAllocate() {
+        assertTicksDoNotAllocate(new GameSimulation(new GameEngine(7, new CharBoard(GameEngine.NUM_ROWS, GameEngine.NUM_COLS))));
+    }
+
+    private void assertTicksDoNotAllocate(GameSimulation simulation) {
+        Random random = new Random(3);
+        play(simulation, random, WARM_UP_TICKS);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int landed = play(simulation, random, TICKS);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(landed > 0, "no stone landed, the test plays nothing");
+        assertTrue(allocated <= MAX_BYTES_PER_TICKS,
+                allocated + " bytes allocated in " + TICKS + " ticks (" + landed + " stones landed)");
+    }
+
+    // Returns how many stones landed, across restarted games
+    private static int play(GameSimulation simulation, Random random, int ticks) {
+        int landed = -simulation.getEngine().getStonesLanded();
+        for (int tick = 0; tick < ticks; tick++) {
+            GameEngine engine = simulation.getEngine();
+            if (engine.isGameOver()) {
+                landed += engine.getStonesLanded();
+                simulation.restart(random.nextLong());
+            }
+            if ((tick & 15) == 0) {
+                GameSimulation.Key key = KEYS[random.nextInt(KEYS.length)];
+                if (random.nextBoolean()) {
+                    simulation.press(key);
+                } else {
+                    simulation.release(key);
+                }
+            }
+            simulation.update();
+        }
+        return landed + simulation.getEngine().getStonesLanded();
+    }
+}
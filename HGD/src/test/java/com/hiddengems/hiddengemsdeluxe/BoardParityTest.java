@@ -0,0 +1,113 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// CharBoard is the reference; every other way of running the board rules must give the same cells and
+// the same Zobrist hash. Plays seeded games with random inputs and garbage on a BitBoard and a CharBoard
+// side by side, and runs the striped CharBoard passes against the sequential ones.
+class BoardParityTest {
+
+    private static final int STEPS = 200_000;
+    private static final int PASSES = 300;
+
+    private static final GameEngine.Input[] INPUTS = GameEngine.Input.values();
+    private static final char[] GEMS = {'R', 'G', 'B', 'Y', 'P'};
+
+    @Test
+    void bitBoardPlaysLikeCharBoard() {
+        CharBoard charBoard = new CharBoard(GameEngine.NUM_ROWS, GameEngine.NUM_COLS);
+        BitBoard bitBoard = new BitBoard(GameEngine.NUM_ROWS, GameEngine.NUM_COLS);
+        GameEngine reference = new GameEngine(11, charBoard);
+        GameEngine engine = new GameEngine(11, bitBoard);
+        Random random = new Random(5);
+        int games = 0;
+        for (int step = 0; step < STEPS; step++) {
+            if (reference.isGameOver()) {
+                long seed = random.nextLong();
+                reference = new GameEngine(seed, charBoard);
+                engine = new GameEngine(seed, bitBoard);
+                games++;
+            }
+            if (random.nextInt(2000) == 0) {
+                int rows = 1 + random.nextInt(3); // Rise before the next stone spawns
+                reference.addGarbage(rows);
+                engine.addGarbage(rows);
+            }
+            if (random.nextInt(4) == 0) {
+                GameEngine.Input input = INPUTS[random.nextInt(INPUTS.length)];
+                reference.step(input);
+                engine.step(input);
+            } else {
+                reference.tick();
+                engine.tick();
+            }
+
+            String at = "game " + games + ", step " + step;
+            assertEquals(BoardSnapshot.of(charBoard), BoardSnapshot.of(bitBoard), at);
+            assertEquals(charBoard.hash(), bitBoard.hash(), at);
+            assertEquals(reference.getScore(), engine.getScore(), at);
+            assertEquals(reference.getPendingGarbage(), engine.getPendingGarbage(), at);
+            assertEquals(reference.isGameOver(), engine.isGameOver(), at);
+        }
+    }
+
+    // 256 x 128 is two stripes each way (CharBoard.STRIPE_CELLS), small enough to run quickly
+    @Test
+    void stripedCharBoardMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CharBoard sequential = new CharBoard(256, 128, null);
+            CharBoard striped = new CharBoard(256, 128, pool);
+            Random random = new Random(9);
+            for (int pass = 0; pass < PASSES; pass++) {
+                // Drop a few gems onto the columns, or scatter them anywhere to leave gaps for gravity
+                int gems = 1 + random.nextInt(pass % 10 == 0 ? 4000 : 200);
+                for (int i = 0; i < gems; i++) {
+                    int col = random.nextInt(128);
+                    int row = pass % 10 == 0 ? random.nextInt(256) : sequential.top(col) - 1;
+                    if (row >= 0) {
+                        char gem = GEMS[random.nextInt(GEMS.length)];
+                        sequential.set(row, col, gem);
+                        striped.set(row, col, gem);
+                    }
+                }
+                while (true) {
+                    boolean matched = sequential.markMatches();
+                    assertEquals(matched, striped.markMatches(), "pass " + pass);
+                    assertSameBoard(sequential, striped, "marked, pass " + pass);
+                    if (!matched) {
+                        break;
+                    }
+                    sequential.clearMarked();
+                    striped.clearMarked();
+                    assertSameBoard(sequential, striped, "cleared, pass " + pass);
+                    sequential.collapse();
+                    striped.collapse();
+                    assertSameBoard(sequential, striped, "collapsed, pass " + pass);
+                }
+                sequential.collapse();
+                striped.collapse();
+                assertEquals(sequential.hasFullColumn(200), striped.hasFullColumn(200), "pass " + pass);
+                if (sequential.hasFullColumn(200)) {
+                    sequential.clear();
+                    striped.clear();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameBoard(CharBoard expected, CharBoard actual, String at) {
+        assertEquals(BoardSnapshot.of(expected), BoardSnapshot.of(actual), at);
+        assertEquals(expected.hash(), actual.hash(), at);
+        for (int col = 0; col < expected.cols(); col++) {
+            assertEquals(expected.top(col), actual.top(col), at + ", top of column " + col);
+        }
+    }
+}
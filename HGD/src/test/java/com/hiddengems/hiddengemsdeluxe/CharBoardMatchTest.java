@@ -0,0 +1,67 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// markMatches() only follows runs through the cells that changed since the last pass; it must find
+// exactly what markAllMatches(), the full-board scan, finds. Builds random boards, then resolves them
+// link by link with one matcher on each of two copies and drops more stones between rounds.
+class CharBoardMatchTest {
+
+    private static final int BOARDS = 2000;
+    private static final int ROUNDS = 5;
+    private static final char[] GEMS = {'R', 'G', 'B', 'Y', 'P'};
+
+    @Test
+    void localizedMatchesEqualFullScan() {
+        Random random = new Random(13);
+        for (int board = 0; board < BOARDS; board++) {
+            int rows = 3 + random.nextInt(20);
+            int cols = 3 + random.nextInt(12);
+            CharBoard local = new CharBoard(rows, cols);
+            CharBoard full = new CharBoard(rows, cols);
+            // Mostly full boards with a few colours match a lot; sparse ones leave floating gems to fall
+            int colors = 2 + random.nextInt(GEMS.length - 1);
+            double density = random.nextDouble();
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    if (random.nextDouble() < density) {
+                        char gem = GEMS[random.nextInt(colors)];
+                        local.set(row, col, gem);
+                        full.set(row, col, gem);
+                    }
+                }
+            }
+            for (int round = 0; round < ROUNDS; round++) {
+                String at = "board " + board + ", round " + round;
+                local.collapse();
+                full.collapse();
+                for (int link = 0; ; link++) {
+                    boolean matched = local.markMatches();
+                    assertEquals(full.markAllMatches(), matched, at + ", link " + link);
+                    assertEquals(BoardSnapshot.of(full), BoardSnapshot.of(local), at + ", link " + link);
+                    if (!matched) {
+                        break;
+                    }
+                    local.clearMarked();
+                    full.clearMarked();
+                    local.collapse();
+                    full.collapse();
+                }
+                // Stones landing on top of the columns, as in a game
+                for (int stone = random.nextInt(cols * 2); stone > 0; stone--) {
+                    int col = random.nextInt(cols);
+                    int row = local.top(col) - 1;
+                    if (row >= 0) {
+                        char gem = GEMS[random.nextInt(colors)];
+                        local.set(row, col, gem);
+                        full.set(row, col, gem);
+                    }
+                }
+            }
+        }
+    }
+}
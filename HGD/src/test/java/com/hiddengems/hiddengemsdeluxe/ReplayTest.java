@@ -0,0 +1,66 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A recorded game must play back to the same end: records seeded games with random keys, pauses and
+// auto-shift settings into one archive, reads it back and re-simulates every replay.
+class ReplayTest {
+
+    private static final int GAMES = 20;
+    private static final int MAX_TICKS = 50_000;
+
+    private static final GameSimulation.Key[] KEYS = GameSimulation.Key.values();
+
+    @Test
+    void recordedGamesReplay(@TempDir Path dir) throws IOException {
+        Path archive = dir.resolve("games.hgdr");
+        Random random = new Random(17);
+        long[] ticks = new long[GAMES];
+        int[] scores = new int[GAMES];
+        for (int game = 0; game < GAMES; game++) {
+            // Odd board sizes too; a few games are cut off before game over, as when the window is closed
+            int rows = game % 4 == 3 ? 12 + random.nextInt(20) : GameEngine.NUM_ROWS;
+            int cols = game % 4 == 3 ? 3 + random.nextInt(12) : GameEngine.NUM_COLS;
+            GameSimulation simulation = new GameSimulation(new GameEngine(random.nextLong(), rows, cols, GameRules.DEFAULT));
+            simulation.setAutoShift(1 + random.nextInt(20), 1 + random.nextInt(5));
+            int maxTicks = game % 5 == 2 ? random.nextInt(MAX_TICKS / 10) : MAX_TICKS;
+            try (ReplayRecorder recorder = ReplayRecorder.append(archive, simulation)) {
+                simulation.setRecorder(recorder);
+                for (int update = 0; update < maxTicks && !simulation.getEngine().isGameOver(); update++) {
+                    if (random.nextInt(12) == 0) {
+                        GameSimulation.Key key = KEYS[random.nextInt(KEYS.length)];
+                        if (key == GameSimulation.Key.ENTER && random.nextInt(4) != 0) {
+                            continue; // Pause now and then, not every few dozen ticks
+                        }
+                        if (random.nextBoolean()) {
+                            simulation.press(key);
+                        } else {
+                            simulation.release(key);
+                        }
+                    }
+                    simulation.update();
+                }
+            }
+            ticks[game] = simulation.getTick();
+            scores[game] = simulation.getEngine().getScore();
+        }
+
+        List<Replay> replays = ReplayArchive.open(archive).replays();
+        assertEquals(GAMES, replays.size());
+        for (int game = 0; game < GAMES; game++) {
+            Replay replay = replays.get(game);
+            assertEquals(ticks[game], replay.ticks(), "game " + game);
+            assertEquals(scores[game], replay.score(), "game " + game);
+            assertTrue(ReplayPlayer.matches(replay), "game " + game + " does not replay to its recorded end");
+        }
+    }
+}
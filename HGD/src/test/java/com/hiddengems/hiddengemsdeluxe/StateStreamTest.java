@@ -0,0 +1,207 @@
+package com.hiddengems.hiddengemsdeluxe;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A state stream must show what the engine showed: records seeded games with random keys and garbage
+// at a short keyframe interval, remembering the engine's state after every tick, and reads them back
+// frame by frame, by seeking, and as they arrive a few bytes at a time.
+class StateStreamTest {
+
+    private static final int GAMES = 3;
+    private static final int MAX_TICKS = 20_000;
+    private static final int KEYFRAME_TICKS = 50;
+    private static final int SEEKS = 200;
+
+    private static final GameSimulation.Key[] KEYS = {
+            GameSimulation.Key.LEFT, GameSimulation.Key.RIGHT, GameSimulation.Key.DOWN,
+            GameSimulation.Key.SPACE, GameSimulation.Key.UP
+    };
+
+    @Test
+    void framesShowTheEngineState(@TempDir Path dir) throws IOException {
+        for (int game = 0; game < GAMES; game++) {
+            Path file = dir.resolve("game-" + game + ".hgds");
+            List<GameState> expected = record(file, game);
+            int frames = 0;
+            try (StateStreamReader reader = StateStreamReader.open(file)) {
+                assertEquals(GameEngine.NUM_ROWS, reader.rows());
+                assertEquals(GameEngine.NUM_COLS, reader.cols());
+                long lastTick = -1;
+                for (GameState state = reader.next(); state != null; state = reader.next()) {
+                    assertTrue(state.tick() > lastTick, "game " + game + ": frame ticks must go up");
+                    assertShows(expected.get((int) state.tick()), state, "game " + game);
+                    lastTick = state.tick();
+                    frames++;
+                }
+                assertEquals(expected.size() - 1, lastTick, "game " + game + ": the last tick changed something");
+            }
+            assertTrue(frames > 2 * expected.size() / KEYFRAME_TICKS, "game " + game + ": " + frames + " frames");
+        }
+    }
+
+    @Test
+    void seekFindsTheLastFrameAtOrBeforeTheTick(@TempDir Path dir) throws IOException {
+        Random random = new Random(23);
+        for (int game = 0; game < GAMES; game++) {
+            Path file = dir.resolve("game-" + game + ".hgds");
+            List<GameState> expected = record(file, game);
+            List<Long> frameTicks = new ArrayList<>();
+            try (StateStreamReader reader = StateStreamReader.open(file)) {
+                for (GameState state = reader.next(); state != null; state = reader.next()) {
+                    frameTicks.add(state.tick());
+                }
+            }
+            try (StateStreamReader reader = StateStreamReader.open(file)) {
+                for (int seek = 0; seek < SEEKS; seek++) {
+                    long target = random.nextInt(expected.size() + KEYFRAME_TICKS); // Past the end too
+                    String at = "game " + game + ", seek to " + target;
+                    GameState state = reader.seek(target);
+                    assertNotNull(state, at);
+                    assertEquals(lastFrameAtOrBefore(frameTicks, target), state.tick(), at);
+                    assertShows(expected.get((int) Math.min(target, expected.size() - 1)), state, at);
+                    if (seek % 10 == 0) { // Reading on after a seek continues from there
+                        GameState next = reader.next();
+                        if (next != null) {
+                            assertShows(expected.get((int) next.tick()), next, at + ", next frame");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void partialStreamResumesWhenMoreArrives(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("game.hgds");
+        List<GameState> expected = record(file, 0);
+        byte[] bytes = Files.readAllBytes(file);
+        Arriving channel = new Arriving(bytes);
+        channel.arrived = StateStream.HEADER_BYTES;
+        Random random = new Random(29);
+        int frames = 0;
+        try (StateStreamReader reader = StateStreamReader.open(channel)) {
+            assertNull(reader.next(), "nothing but the header has arrived");
+            while (channel.arrived < bytes.length) {
+                // Anything from part of a length varint to a few frames at once
+                channel.arrived = Math.min(bytes.length, channel.arrived + 1 + random.nextInt(40));
+                for (GameState state = reader.next(); state != null; state = reader.next()) {
+                    assertShows(expected.get((int) state.tick()), state, "after " + channel.arrived + " bytes");
+                    frames++;
+                }
+            }
+        }
+        int all = 0;
+        try (StateStreamReader reader = StateStreamReader.open(file)) {
+            while (reader.next() != null) {
+                all++;
+            }
+        }
+        assertEquals(all, frames);
+    }
+
+    // Play a seeded game into the file; the engine's state after every tick, indexed by tick
+    private static List<GameState> record(Path file, int game) throws IOException {
+        GameSimulation simulation = new GameSimulation(new GameEngine(31 + game, GameEngine.NUM_ROWS, GameEngine.NUM_COLS, GameRules.DEFAULT));
+        GameEngine engine = simulation.getEngine();
+        Random random = new Random(game);
+        List<GameState> states = new ArrayList<>();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try (StateStreamWriter writer = StateStreamWriter.open(channel, engine.getRows(), engine.getCols(), KEYFRAME_TICKS)) {
+            simulation.setStateWriter(writer);
+            states.add(capture(0, engine));
+            while (!engine.isGameOver() && simulation.getTick() < MAX_TICKS) {
+                if (random.nextInt(16) == 0) {
+                    GameSimulation.Key key = KEYS[random.nextInt(KEYS.length)];
+                    if (random.nextBoolean()) {
+                        simulation.press(key);
+                    } else {
+                        simulation.release(key);
+                    }
+                }
+                if (random.nextInt(1000) == 0) {
+                    engine.addGarbage(1 + random.nextInt(2));
+                }
+                simulation.update();
+                states.add(capture(simulation.getTick(), engine));
+            }
+        }
+        return states;
+    }
+
+    private static GameState capture(long tick, GameEngine engine) {
+        return new GameState(tick, engine.snapshotBoard(), engine.getFallingPiece(), engine.getNextPiece(),
+                engine.getScore(), engine.getLevel());
+    }
+
+    private static void assertShows(GameState expected, GameState actual, String at) {
+        at += ", tick " + expected.tick();
+        assertEquals(expected.board(), actual.board(), at);
+        assertEquals(expected.falling(), actual.falling(), at);
+        Piece next = expected.next();
+        assertEquals(next.top(), actual.next().top(), at); // The preview has no place on the board
+        assertEquals(next.middle(), actual.next().middle(), at);
+        assertEquals(next.bottom(), actual.next().bottom(), at);
+        assertEquals(expected.score(), actual.score(), at);
+        assertEquals(expected.level(), actual.level(), at);
+    }
+
+    private static long lastFrameAtOrBefore(List<Long> frameTicks, long target) {
+        long last = -1;
+        for (long tick : frameTicks) {
+            if (tick > target) {
+                break;
+            }
+            last = tick;
+        }
+        return last;
+    }
+
+    // A stream that has arrived up to a point, like a socket with nothing more to read yet
+    private static final class Arriving implements ReadableByteChannel {
+
+        private final byte[] bytes;
+        private int position;
+        private int arrived;
+
+        Arriving(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), arrived - position);
+            dst.put(bytes, position, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}